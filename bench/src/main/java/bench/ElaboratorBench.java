@@ -0,0 +1,50 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import control.Control;
+import elaborator.ElaboratorVisitor;
+
+// type checking the AST; elaborating it again only redoes the same
+// annotations. "jobs" is the number of workers checking the method
+// bodies (see "-elabjobs").
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ElaboratorBench {
+    @Param({"1", "4"})
+    public int jobs;
+
+    @Setup
+    public void setup() {
+        Control.ConAst.elabJobs = this.jobs;
+    }
+
+    @TearDown
+    public void tearDown() {
+        Control.ConAst.elabJobs = 1;
+    }
+
+    @Benchmark
+    public ElaboratorVisitor elaborate(Input in) {
+        ElaboratorVisitor elab = new ElaboratorVisitor();
+        in.ast.accept(elab);
+        return elab;
+    }
+}
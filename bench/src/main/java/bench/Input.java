@@ -0,0 +1,124 @@
+package bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ast.Ast;
+import control.Control;
+import lexer.Lexer;
+import lexer.TokenStream;
+import parser.Parser;
+
+// The program every benchmark works on, taken through all the phases
+// once up front, so that each benchmark times exactly one phase on the
+// output of the one before.
+//
+// "input" is either a file, relative to the root of the repository
+// (the system property "tiger.root", by default the working directory),
+// "monster:<n>" for a generated program in the shape of
+// "test/MonsterGen.java" with n statements, or "chain:<n>" for a
+// generated hierarchy of n classes, each extending the one before.
+@State(Scope.Benchmark)
+public class Input {
+    @Param({"test/BinaryTree.java", "test/QuickSort.java", "test/LinkedList.java",
+            "monster:10000", "monster:100000", "chain:1000"})
+    public String input;
+
+    public String fname;
+    public char[] buf;
+    public TokenStream tokens;
+    public Ast.Program.T ast; // elaborated
+    public codegen.C.Ast.Program.T c;
+    public codegen.bytecode.Ast.Program.T bytecode;
+    public codegen.dalvik.Ast.Program.T dalvik;
+
+    private PrintStream stdout;
+    private File cOutput;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if (this.input.startsWith("monster:")) {
+            int n = Integer.parseInt(this.input.substring("monster:".length()));
+            this.fname = "Monster" + n + ".java";
+            this.buf = Monster.source(n);
+        } else if (this.input.startsWith("chain:")) {
+            int n = Integer.parseInt(this.input.substring("chain:".length()));
+            this.fname = "Chain" + n + ".java";
+            this.buf = Monster.chain(n);
+        } else {
+            this.fname = this.input;
+            File file = new File(System.getProperty("tiger.root", "."), this.input);
+            FileInputStream in = new FileInputStream(file);
+            this.buf = new Lexer(this.fname, in).buffer();
+            in.close();
+        }
+
+        // the elaborator and the AST printer talk on stdout
+        this.stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        // the C printer writes to the output file, the bytecode and
+        // dalvik ones write one file per class into the working directory.
+        this.cOutput = File.createTempFile("tiger-bench", ".c");
+        Control.ConCodeGen.fileName = this.fname;
+        Control.ConCodeGen.outputName = this.cOutput.getPath();
+
+        this.tokens = new TokenStream(new Lexer(this.fname, this.buf));
+        this.ast = new Parser(this.tokens).parse();
+        this.ast.accept(new elaborator.ElaboratorVisitor());
+
+        // a backend that fails on this input leaves its program null,
+        // so that only its own benchmarks fail.
+        try {
+            codegen.C.TranslateVisitor trans = new codegen.C.TranslateVisitor();
+            this.ast.accept(trans);
+            this.c = trans.program;
+        } catch (RuntimeException e) {
+            this.c = null;
+        }
+        try {
+            codegen.bytecode.TranslateVisitor trans = new codegen.bytecode.TranslateVisitor();
+            this.ast.accept(trans);
+            this.bytecode = trans.program;
+        } catch (RuntimeException e) {
+            this.bytecode = null;
+        }
+        try {
+            codegen.dalvik.TranslateVisitor trans = new codegen.dalvik.TranslateVisitor();
+            this.ast.accept(trans);
+            this.dalvik = trans.program;
+        } catch (RuntimeException e) {
+            this.dalvik = null;
+        }
+    }
+
+    // the translated program, or fail if the backend could not do it
+    static <T> T translated(T program, String backend, Input in) {
+        if (program == null)
+            throw new IllegalStateException("the " + backend + " backend fails on " + in.input);
+        return program;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(this.stdout);
+        this.cOutput.delete();
+    }
+}
@@ -0,0 +1,54 @@
+package bench;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import codegen.C.Ast.Dec;
+import codegen.C.Ast.Type;
+import codegen.C.ClassTable;
+
+// laying out the fields and vtables of the C backend for a chain of
+// "n" classes, each extending the one before with a field and a method
+// of its own and overriding the method of the first one. Each layout
+// is as long as the chain above it, so the time should grow with
+// n * n, the size of the result, and no faster.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LayoutBench {
+    @Param({"1000", "2000", "4000"})
+    public int n;
+
+    @Benchmark
+    public ClassTable inherit() {
+        ClassTable table = new ClassTable();
+        LinkedList<Dec.T> none = new LinkedList<Dec.T>();
+        for (int i = 0; i < this.n; i++) {
+            String c = "C" + i;
+            table.init(c, i == 0 ? null : "C" + (i - 1));
+            LinkedList<Dec.T> decs = new LinkedList<Dec.T>();
+            decs.add(new Dec.DecSingle(new Type.Int(), "f" + i));
+            table.initDecs(c, decs);
+            table.initMethod(c, new Type.Int(), none, "m" + i);
+            if (i > 0)
+                table.initMethod(c, new Type.Int(), none, "m0");
+        }
+        // from the bottom, so that the whole chain is laid out at once
+        table.inherit("C" + (this.n - 1));
+        return table;
+    }
+}
@@ -0,0 +1,23 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Run the benchmarks, e.g. from the root of the repository:
+//   java -jar bench/target/benchmarks.jar                  all of them
+//   java -jar bench/target/benchmarks.jar Parser           only some
+//   java -jar bench/target/benchmarks.jar -p input=monster:1000000
+// Takes the usual JMH options; the allocation rate of each benchmark
+// is reported as well (the "gc" profiler), unless other profilers
+// are asked for.
+public class Main {
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if (!jmhArgs.contains("-prof") && !jmhArgs.contains("-l") && !jmhArgs.contains("-h")) {
+            jmhArgs.add("-prof");
+            jmhArgs.add("gc");
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,49 @@
+package bench;
+
+// Programs in the shape of the ones "test/MonsterGen.java" prints: one
+// method with "n" statements. Unlike those, they are valid MiniJava,
+// so they get through every phase.
+public class Monster {
+    public static char[] source(int n) {
+        StringBuilder sb = new StringBuilder(64 + n * 20);
+        sb.append("class Monster\n{\n");
+        sb.append("\tpublic static void main (String[] args)\n");
+        sb.append("\t{\n\t\tSystem.out.println (new Foo().foo());\n");
+        sb.append("\t}\n}\n\n");
+        sb.append("class Foo\n{\n");
+        sb.append("\tpublic int foo()\n");
+        sb.append("\t{\n");
+        sb.append("\t\tint sum;\n\n");
+        sb.append("\t\tsum = 0;\n");
+        for (int i = 0; i < n; i++)
+            sb.append("\t\tsum = sum + 1;\n");
+        sb.append("\t\treturn sum;\n");
+        sb.append("\t}\n");
+        sb.append("}\n");
+        char[] buf = new char[sb.length()];
+        sb.getChars(0, sb.length(), buf, 0);
+        return buf;
+    }
+
+    // a chain of "n" classes, each extending the one before, whose
+    // methods use the field and the method of the first one: the
+    // deepest possible lookups of inherited members.
+    public static char[] chain(int n) {
+        StringBuilder sb = new StringBuilder(64 + n * 120);
+        sb.append("class Chain\n{\n");
+        sb.append("\tpublic static void main (String[] args)\n");
+        sb.append("\t{\n\t\tSystem.out.println (new C" + (n - 1) + "().m" + (n - 1) + "());\n");
+        sb.append("\t}\n}\n\n");
+        sb.append("class C0\n{\n\tint f0;\n");
+        sb.append("\tpublic int m0()\n\t{\n\t\tf0 = 1;\n\t\treturn f0;\n\t}\n}\n");
+        for (int i = 1; i < n; i++) {
+            sb.append("class C" + i + " extends C" + (i - 1) + "\n{\n\tint f" + i + ";\n");
+            sb.append("\tpublic int m" + i + "()\n\t{\n");
+            sb.append("\t\tf" + i + " = f0 + this.m0();\n");
+            sb.append("\t\treturn f" + i + ";\n\t}\n}\n");
+        }
+        char[] buf = new char[sb.length()];
+        sb.getChars(0, sb.length(), buf, 0);
+        return buf;
+    }
+}
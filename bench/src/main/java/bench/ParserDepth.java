@@ -0,0 +1,66 @@
+package bench;
+
+import lexer.Lexer;
+import lexer.TokenStream;
+import parser.Parser;
+
+// How deep the parser recurses, measured from outside, so that the
+// parser itself carries no instrumentation: the deepest parenthesised
+// expression, "((...(1)...))", that parses in a thread with a stack of
+// the given kilobytes (1024 by default), and so how much stack each
+// level of nesting takes. From the root of the repository:
+//   java -cp bench/target/benchmarks.jar bench.ParserDepth [<kilobytes>]
+public class ParserDepth {
+    public static void main(String[] args) throws Exception {
+        long kb = args.length > 0 ? Long.parseLong(args[0]) : 1024;
+
+        // the compiled parser needs less stack than the interpreted one
+        TokenStream warm = tokens(100);
+        for (int i = 0; i < 1000; i++)
+            parses(warm, kb);
+
+        int fits = 0, fails = 1 << 20;
+        while (fails - fits > 1) {
+            int mid = (fits + fails) >>> 1;
+            if (parses(tokens(mid), kb))
+                fits = mid;
+            else
+                fails = mid;
+        }
+        System.out.println("deepest nesting in " + kb + " KB of stack: " + fits
+                + " parentheses, " + (fits == 0 ? "-" : Long.toString(kb * 1024 / fits))
+                + " bytes each");
+    }
+
+    // a program printing an expression nested "depth" deep
+    static TokenStream tokens(int depth) {
+        StringBuilder sb = new StringBuilder(2 * depth + 128);
+        sb.append("class Nest\n{\n\tpublic static void main (String[] args)\n\t{\n");
+        sb.append("\t\tSystem.out.println (");
+        for (int i = 0; i < depth; i++)
+            sb.append('(');
+        sb.append('1');
+        for (int i = 0; i < depth; i++)
+            sb.append(')');
+        sb.append(");\n\t}\n}\n");
+        char[] buf = new char[sb.length()];
+        sb.getChars(0, sb.length(), buf, 0);
+        return new TokenStream(new Lexer("Nest.java", buf));
+    }
+
+    private static boolean parses(TokenStream tokens, long kb) throws InterruptedException {
+        boolean[] ok = new boolean[1];
+        Thread t = new Thread(null, () -> {
+            try {
+                tokens.seek(0);
+                new Parser(tokens).parse();
+                ok[0] = true;
+            } catch (StackOverflowError e) {
+                // too deep for this stack
+            }
+        }, "parse", kb * 1024);
+        t.start();
+        t.join();
+        return ok[0];
+    }
+}
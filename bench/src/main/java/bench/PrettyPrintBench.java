@@ -0,0 +1,40 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// printing each IR, the way the compiler does it: the AST to stdout
+// (discarded here), the backends to their output files.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrettyPrintBench {
+    @Benchmark
+    public void ast(Input in) {
+        in.ast.accept(new ast.PrettyPrintVisitor());
+    }
+
+    @Benchmark
+    public void c(Input in) {
+        Input.translated(in.c, "C", in).accept(new codegen.C.PrettyPrintVisitor());
+    }
+
+    @Benchmark
+    public void bytecode(Input in) {
+        Input.translated(in.bytecode, "bytecode", in).accept(new codegen.bytecode.PrettyPrintVisitor());
+    }
+
+    @Benchmark
+    public void dalvik(Input in) {
+        Input.translated(in.dalvik, "dalvik", in).accept(new codegen.dalvik.PrettyPrintVisitor());
+    }
+}
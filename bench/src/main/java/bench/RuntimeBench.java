@@ -0,0 +1,118 @@
+package bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ast.Ast;
+import control.Control;
+import lexer.Lexer;
+import lexer.TokenStream;
+import parser.Parser;
+
+// Running a compiled program: one of "Sorts", "<kind>:<size>", is
+// compiled to C and linked with "runtime/runtime.c" by gcc once (the
+// C includes "runtime/gc.h"), then each run sorts its arrays in a
+// heap of "heapSize" kilobytes with the collector "gc". "largeArray"
+// is the "-largeArray" of the runtime: 0 keeps the big arrays in the
+// heap, where every collection copies them.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuntimeBench {
+    @Param({"bubble:5000", "quick:200000"})
+    public String program;
+
+    @Param({"copy", "gen"})
+    public String gc;
+
+    @Param({"16", "0"})
+    public String largeArray;
+
+    @Param({"8192"})
+    public String heapSize;
+
+    private static final int ROUNDS = 10;
+
+    private File dir;
+    private String exe;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int colon = this.program.indexOf(':');
+        String kind = this.program.substring(0, colon);
+        int size = Integer.parseInt(this.program.substring(colon + 1));
+        char[] buf = Sorts.source(kind, size, ROUNDS);
+
+        this.dir = Files.createTempDirectory("tiger-bench").toFile();
+        File c = new File(this.dir, "Sorts.java.c");
+        Control.ConCodeGen.fileName = "Sorts.java";
+        Control.ConCodeGen.outputName = c.getPath();
+        Ast.Program.T ast = new Parser(new TokenStream(new Lexer("Sorts.java", buf))).parse();
+        ast.accept(new elaborator.ElaboratorVisitor());
+        codegen.C.TranslateVisitor trans = new codegen.C.TranslateVisitor();
+        ast.accept(trans);
+        trans.program.accept(new codegen.C.PrettyPrintVisitor());
+
+        File runtime = new File(System.getProperty("tiger.root", "."), "runtime/runtime.c");
+        this.exe = new File(this.dir, "sorts").getPath();
+        this.run("gcc", "-O2", "-I" + runtime.getParent(), "-o", this.exe, c.getPath(), runtime.getPath());
+    }
+
+    @Benchmark
+    public void run() throws IOException {
+        String out = this.run(this.exe, "@tiger", "-heapSize", this.heapSize,
+                "-gc", this.gc, "-largeArray", this.largeArray, "@");
+        if (!out.trim().equals("0"))
+            throw new IllegalStateException("the arrays are not sorted: " + out);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File f : this.dir.listFiles())
+            f.delete();
+        this.dir.delete();
+    }
+
+    // run "command" to the end, and return what it prints; fail if it
+    // fails. What it prints on stderr, such as the statistics of the
+    // collector, goes to "stderr.log".
+    private String run(String... command) throws IOException {
+        File log = new File(this.dir, "stderr.log");
+        Process p = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.to(log)).start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = p.getInputStream();
+        byte[] b = new byte[4096];
+        for (int n; (n = in.read(b)) > 0; )
+            out.write(b, 0, n);
+        try {
+            if (p.waitFor() != 0)
+                throw new IllegalStateException(String.join(" ", command) + " failed:\n" + out
+                        + new String(Files.readAllBytes(log.toPath())));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+}
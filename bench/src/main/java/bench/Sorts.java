@@ -0,0 +1,109 @@
+package bench;
+
+// Programs in the shape of "test/BubbleSort.java" and
+// "test/QuickSort.java", scaled up: they sort "rounds" fresh arrays of
+// "size" pseudo-random ints each, and print how many elements were
+// left out of order, that is 0. Every element comes with a small
+// garbage array, so that the heap is collected while the big array
+// is live.
+public class Sorts {
+    // "kind" is "bubble" or "quick"
+    public static char[] source(String kind, int size, int rounds) {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("class Sorts\n{\n");
+        sb.append("\tpublic static void main (String[] args)\n");
+        sb.append("\t{\n\t\tSystem.out.println (new Sorter().run(" + rounds + ", " + size + "));\n");
+        sb.append("\t}\n}\n\n");
+        sb.append("class Sorter\n{\n");
+        sb.append("\tint[] number;\n");
+        sb.append("\tint seed;\n\n");
+
+        sb.append("\tpublic int run(int rounds, int size)\n\t{\n");
+        sb.append("\t\tint r;\n\t\tint bad;\n\t\tint nt;\n\n");
+        sb.append("\t\tr = 0;\n\t\tbad = 0;\n\t\tseed = 1;\n");
+        sb.append("\t\twhile (r < rounds) {\n");
+        sb.append("\t\t\tnumber = new int[size];\n");
+        sb.append("\t\t\tnt = this.fill(size);\n");
+        if (kind.equals("bubble"))
+            sb.append("\t\t\tnt = this.sort(size);\n");
+        else if (kind.equals("quick"))
+            sb.append("\t\t\tnt = this.sort(0, size - 1);\n");
+        else
+            throw new IllegalArgumentException("no such sort: " + kind);
+        sb.append("\t\t\tbad = bad + this.check(size);\n");
+        sb.append("\t\t\tr = r + 1;\n");
+        sb.append("\t\t}\n");
+        sb.append("\t\treturn bad;\n\t}\n\n");
+
+        sb.append("\tpublic int fill(int size)\n\t{\n");
+        sb.append("\t\tint i;\n\t\tint[] garbage;\n\n");
+        sb.append("\t\ti = 0;\n");
+        sb.append("\t\twhile (i < size) {\n");
+        sb.append("\t\t\tgarbage = new int[4];\n");
+        sb.append("\t\t\tnumber[i] = this.next();\n");
+        sb.append("\t\t\ti = i + 1;\n");
+        sb.append("\t\t}\n");
+        sb.append("\t\treturn 0;\n\t}\n\n");
+
+        sb.append("\tpublic int next()\n\t{\n");
+        sb.append("\t\tseed = seed * 17 + 11;\n");
+        sb.append("\t\twhile (10006 < seed)\n\t\t\tseed = seed - 10007;\n");
+        sb.append("\t\treturn seed;\n\t}\n\n");
+
+        sb.append("\tpublic int check(int size)\n\t{\n");
+        sb.append("\t\tint i;\n\t\tint bad;\n\n");
+        sb.append("\t\ti = 1;\n\t\tbad = 0;\n");
+        sb.append("\t\twhile (i < size) {\n");
+        sb.append("\t\t\tif (number[i] < number[i - 1])\n\t\t\t\tbad = bad + 1;\n");
+        sb.append("\t\t\telse\n\t\t\t\tbad = bad;\n");
+        sb.append("\t\t\ti = i + 1;\n");
+        sb.append("\t\t}\n");
+        sb.append("\t\treturn bad;\n\t}\n\n");
+
+        if (kind.equals("bubble")) {
+            sb.append("\tpublic int sort(int size)\n\t{\n");
+            sb.append("\t\tint i;\n\t\tint j;\n\t\tint t;\n\n");
+            sb.append("\t\ti = size - 1;\n");
+            sb.append("\t\twhile (0 < i) {\n");
+            sb.append("\t\t\tj = 0;\n");
+            sb.append("\t\t\twhile (j < i) {\n");
+            sb.append("\t\t\t\tif (number[j + 1] < number[j]) {\n");
+            sb.append("\t\t\t\t\tt = number[j];\n");
+            sb.append("\t\t\t\t\tnumber[j] = number[j + 1];\n");
+            sb.append("\t\t\t\t\tnumber[j + 1] = t;\n");
+            sb.append("\t\t\t\t} else\n\t\t\t\t\tt = 0;\n");
+            sb.append("\t\t\t\tj = j + 1;\n");
+            sb.append("\t\t\t}\n");
+            sb.append("\t\t\ti = i - 1;\n");
+            sb.append("\t\t}\n");
+            sb.append("\t\treturn 0;\n\t}\n");
+        } else {
+            sb.append("\tpublic int sort(int left, int right)\n\t{\n");
+            sb.append("\t\tint p;\n\t\tint i;\n\t\tint j;\n\t\tint t;\n\t\tint nt;\n\n");
+            sb.append("\t\tif (left < right) {\n");
+            sb.append("\t\t\tp = number[right];\n");
+            sb.append("\t\t\ti = left;\n");
+            sb.append("\t\t\tj = left;\n");
+            sb.append("\t\t\twhile (j < right) {\n");
+            sb.append("\t\t\t\tif (number[j] < p) {\n");
+            sb.append("\t\t\t\t\tt = number[i];\n");
+            sb.append("\t\t\t\t\tnumber[i] = number[j];\n");
+            sb.append("\t\t\t\t\tnumber[j] = t;\n");
+            sb.append("\t\t\t\t\ti = i + 1;\n");
+            sb.append("\t\t\t\t} else\n\t\t\t\t\tnt = 0;\n");
+            sb.append("\t\t\t\tj = j + 1;\n");
+            sb.append("\t\t\t}\n");
+            sb.append("\t\t\tt = number[i];\n");
+            sb.append("\t\t\tnumber[i] = number[right];\n");
+            sb.append("\t\t\tnumber[right] = t;\n");
+            sb.append("\t\t\tnt = this.sort(left, i - 1);\n");
+            sb.append("\t\t\tnt = this.sort(i + 1, right);\n");
+            sb.append("\t\t} else\n\t\t\tnt = 0;\n");
+            sb.append("\t\treturn 0;\n\t}\n");
+        }
+        sb.append("}\n");
+        char[] buf = new char[sb.length()];
+        sb.getChars(0, sb.length(), buf, 0);
+        return buf;
+    }
+}
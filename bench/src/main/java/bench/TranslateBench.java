@@ -0,0 +1,47 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// translating the elaborated AST, once per backend
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslateBench {
+    @Benchmark
+    public codegen.C.Ast.Program.T c(Input in) {
+        codegen.C.TranslateVisitor trans = new codegen.C.TranslateVisitor();
+        in.ast.accept(trans);
+        return trans.program;
+    }
+
+    // translating and printing C at once, method by method (see
+    // "-stream"); compare with "c" plus "PrettyPrintBench.c".
+    @Benchmark
+    public void cStream(Input in) {
+        in.ast.accept(new codegen.C.TranslateVisitor(new codegen.C.PrettyPrintVisitor()));
+    }
+
+    @Benchmark
+    public codegen.bytecode.Ast.Program.T bytecode(Input in) {
+        codegen.bytecode.TranslateVisitor trans = new codegen.bytecode.TranslateVisitor();
+        in.ast.accept(trans);
+        return trans.program;
+    }
+
+    @Benchmark
+    public codegen.dalvik.Ast.Program.T dalvik(Input in) {
+        codegen.dalvik.TranslateVisitor trans = new codegen.dalvik.TranslateVisitor();
+        in.ast.accept(trans);
+        return trans.program;
+    }
+}
@@ -1,3 +1,4 @@
+#include <limits.h>
 #include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
@@ -18,9 +19,53 @@ typedef enum{
 /*        all functions */
 
 
+// in kilobytes; the heap is sized in int bytes, so at most
+// INT_MAX / 1024 of them
 static void Arg_setHeapSize(int heapSize)
 {
-  Control_heapSize = heapSize;
+  if (heapSize <= 0 || heapSize > INT_MAX / 1024) {
+    printf ("invalid heap size: %d\n", heapSize);
+    exit (0);
+  }
+  Control_heapSize = heapSize * 1024;
+  return;
+}
+
+// in kilobytes, 0 for none
+static void Arg_setLargeArray(int largeArray)
+{
+  if (largeArray < 0 || largeArray > INT_MAX / 1024) {
+    printf ("invalid large array size: %d\n", largeArray);
+    exit (0);
+  }
+  Control_largeArray = largeArray * 1024;
+  return;
+}
+
+// "copy" or "gen"
+static void Arg_setGc(char *gc)
+{
+  if (strcmp (gc, "copy") == 0)
+    Control_gcMode = GC_COPY;
+  else if (strcmp (gc, "gen") == 0)
+    Control_gcMode = GC_GEN;
+  else {
+    printf ("invalid collector: %s\n", gc);
+    exit (0);
+  }
+  return;
+}
+
+static void Arg_setGcLog()
+{
+  Control_gcLog = GCLOG_EACH;
+  return;
+}
+
+static void Arg_setGcStats()
+{
+  if (Control_gcLog == GCLOG_NONE)
+    Control_gcLog = GCLOG_SUMMARY;
   return;
 }
 
@@ -48,6 +93,26 @@ static struct Arg_t allArgs[] = {
    "set the Java heap size (in kilobytes)",
    ARGTYPE_INT,
    Arg_setHeapSize},
+  {"gc",
+   "{copy|gen}",
+   "set the garbage collector: semi-space or generational",
+   ARGTYPE_STRING,
+   Arg_setGc},
+  {"largeArray",
+   "<n>",
+   "allocate int arrays of at least <n> kilobytes apart, never moved (0: none)",
+   ARGTYPE_INT,
+   Arg_setLargeArray},
+  {"gcLog",
+   "",
+   "log each collection, and the statistics at exit",
+   ARGTYPE_EMPTY,
+   Arg_setGcLog},
+  {"gcStats",
+   "",
+   "print the statistics of the collector at exit",
+   ARGTYPE_EMPTY,
+   Arg_setGcStats},
   {0,
    0,
    0,
@@ -123,13 +188,15 @@ void CommandLine_doarg (int argc, char **argv)
     if (strcmp(argv[index++], "@tiger")==0)
       break;
   }
-  for (index=0; index<argc; ){
+  while (index<argc){
     char *inputName = argv[index++];
     // If a string starts with '@', then
     // treat it as a terminator.
-    if ('@' != inputName[0]){
+    if ('@' == inputName[0]){
       break;
     }
+    if ('-' != inputName[0])
+      errorNoName (inputName);
     
     // this is a potential argument
     int i = 0;
@@ -159,16 +226,21 @@ void CommandLine_doarg (int argc, char **argv)
         break;
       }
       case ARGTYPE_INT:{
-        int result;
-        char *arg;
+        long result;
+        char *arg, *end;
         
         if (index>=argc)
           errorNoArg (allArgs[i].name,
                       allArgs[i].arg);
         
         arg = argv[index++];
-        result = atoi (arg);
-        allArgs[i].action (result);
+        result = strtol (arg, &end, 10);
+        if (end == arg || *end != '\0'
+            || result < INT_MIN || result > INT_MAX)
+          errorWrongArg (allArgs[i].name,
+                         allArgs[i].arg,
+                         arg);
+        allArgs[i].action ((int)result);
         break;
       }
       case ARGTYPE_STRING:{
@@ -1,3 +1,9 @@
 #include "control.h"
 
-int Control_heapSize = 1024;
+int Control_heapSize = 1024 * 1024;
+
+int Control_largeArray = 16 * 1024;
+
+GcMode_t Control_gcMode = GC_COPY;
+
+GcLog_t Control_gcLog = GCLOG_NONE;
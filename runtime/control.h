@@ -4,4 +4,25 @@
 // size of the Java heap (in bytes)
 extern int Control_heapSize;
 
+// int arrays of at least so many bytes go to the large-object
+// space, 0 for none
+extern int Control_largeArray;
+
+// the garbage collector
+typedef enum {
+  GC_COPY,  // a semi-space copying collector
+  GC_GEN,   // a generational one, with a nursery
+} GcMode_t;
+
+extern GcMode_t Control_gcMode;
+
+// the statistics of the collector
+typedef enum {
+  GCLOG_NONE,
+  GCLOG_SUMMARY,  // at exit
+  GCLOG_EACH,     // a line for each collection, and at exit
+} GcLog_t;
+
+extern GcLog_t Control_gcLog;
+
 #endif
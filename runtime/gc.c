@@ -1,6 +1,12 @@
 #include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
+#include <stdint.h>
+#include <time.h>
+#include <sys/mman.h>
+#include <unistd.h>
+#include "control.h"
+#include "gc.h"
 
 // The Gimple Garbage Collector.
 
@@ -8,7 +14,7 @@
 //===============================================================//
 // The Java Heap data structure.
 
-/*   
+/*
       ----------------------------------------------------
       |                        |                         |
       ----------------------------------------------------
@@ -30,146 +36,630 @@ struct JavaHeap
 // "heap_init" function.
 struct JavaHeap heap;
 
-// Lab 4, exercise 10:
-// Given the heap size (in bytes), allocate a Java heap
-// in the C heap, initialize the relevant fields.
-void Tiger_heap_init (int heapSize)
+// With "@tiger -gc gen @", objects are allocated in a nursery that
+// comes after the two semi-heaps, which then make the old space:
+//
+//   | from (old) | to (old) | nursery |
+//
+// A minor collection copies what is live in the nursery into the
+// "from" space, and when that leaves less room there than the nursery
+// takes, a major collection copies the "from" space into the "to"
+// space, as a semi-space collection does. Without "-gc gen", the
+// nursery is empty.
+struct Nursery
+{
+  char *start;
+  char *free;       // the next "free" space
+  char *limit;      // how far "free" may go
+  char *end;
+};
+
+struct Nursery nursery;
+
+// The card table: a byte for each card of the heap, set by the write
+// barrier when a reference is stored into a field of an object on it
+// (see "gc.h", which the generated C includes too).
+#define TIGER_CARD_SIZE (1 << TIGER_CARD_BITS)
+
+char *Tiger_cards;
+static char *cardTable;
+static long ncards;
+// for each card of the old space, where in it the first object
+// reference on it is, or -1 if none; so that the objects of a dirty
+// card can be found
+static short *firstObject;
+
+#define CARD(p) (((uintptr_t)(p) >> TIGER_CARD_BITS) \
+                 - ((uintptr_t)cardTable - (uintptr_t)Tiger_cards))
+#define CARD_START(c) ((char *)((((uintptr_t)cardTable - (uintptr_t)Tiger_cards) \
+                                 + (c)) << TIGER_CARD_BITS))
+
+//===============================================================//
+// Statistics
+
+// Kept at all times: they cost a few additions for each allocation,
+// and two clock readings for each collection.
+struct Tiger_stats
+{
+  long long bytes;  // allocated, headers included
+  long objects;     // allocated
+  long arrays;      // allocated
+  long collections;
+  long peak;        // the most bytes in use at a time
+};
+
+static struct Tiger_stats stats;
+
+// The collections of a kind: their pause times in nanoseconds, and
+// the bytes in use they moved and that survived.
+struct Tiger_pauses
 {
-  // You should write 7 statement here:
-  // #1: allocate a chunk of memory of size "heapSize" using "malloc"
+  const char *kind;
+  long count;
+  long long total;
+  long long max;
+  long long condemned;
+  long long survived;
+};
 
-  // #2: initialize the "size" field, note that "size" field
-  // is for semi-heap, but "heapSize" is for the whole heap.
+static struct Tiger_pauses minorPauses = {"minor"};
+// every collection of the whole heap, with or without "-gc gen"
+static struct Tiger_pauses majorPauses = {"major"};
 
-  // #3: initialize the "from" field (with what value?)
+static long long Tiger_now ()
+{
+  struct timespec t;
+  clock_gettime (CLOCK_MONOTONIC, &t);
+  return t.tv_sec * 1000000000LL + t.tv_nsec;
+}
 
-  // #4: initialize the "fromFree" field (with what value?)
+static long largeBytes;
 
-  // #5: initialize the "to" field (with what value?)
+// bytes in use in the heap, and in the large-object space
+static long Tiger_in_use ()
+{
+  return (heap.fromFree - heap.from) + (nursery.free - nursery.start)
+    + largeBytes;
+}
 
-  // #6: initizlize the "toStart" field with NULL;
+static void Tiger_gc_report ();
 
-  // #7: initialize the "toNext" field with NULL;
+// Given the heap size (in bytes), allocate a Java heap
+// in the C heap, initialize the relevant fields.
+void Tiger_heap_init (int heapSize)
+{
+  // one more card, to start the heap at a card
+  char *p = malloc ((long)heapSize + TIGER_CARD_SIZE);
+  if (p == 0) {
+    fprintf (stderr, "OutOfMemory: cannot allocate a heap of %d bytes\n",
+             heapSize);
+    exit (1);
+  }
+  p = (char *)(((uintptr_t)p + TIGER_CARD_SIZE - 1)
+               & ~(uintptr_t)(TIGER_CARD_SIZE - 1));
+
+  long nurserySize = 0;
+  if (Control_gcMode == GC_GEN) {
+    // a quarter of the heap, and each semi-heap, in whole cards
+    nurserySize = heapSize / 4 / TIGER_CARD_SIZE * TIGER_CARD_SIZE;
+    heap.size = (heapSize - nurserySize) / 2 / TIGER_CARD_SIZE * TIGER_CARD_SIZE;
+  } else
+    // each semi-heap, rounded down to whole words
+    heap.size = heapSize / 2 / sizeof (void *) * sizeof (void *);
+  heap.from = p;
+  heap.fromFree = p;
+  heap.to = p + heap.size;
+  heap.toStart = 0;
+  heap.toNext = 0;
+
+  nursery.start = p + 2 * heap.size;
+  nursery.free = nursery.start;
+  nursery.end = nursery.start + nurserySize;
+  nursery.limit = nursery.end;
 
+  // the barrier marks cards with or without "-gc gen"
+  ncards = ((long)heapSize >> TIGER_CARD_BITS) + 1;
+  cardTable = calloc (ncards, 1);
+  if (cardTable == 0) {
+    fprintf (stderr, "OutOfMemory: cannot allocate a card table\n");
+    exit (1);
+  }
+  Tiger_cards = cardTable - ((uintptr_t)p >> TIGER_CARD_BITS);
+  if (Control_gcMode == GC_GEN) {
+    firstObject = malloc (ncards * sizeof (short));
+    if (firstObject == 0) {
+      fprintf (stderr, "OutOfMemory: cannot allocate a card table\n");
+      exit (1);
+    }
+    memset (firstObject, -1, ncards * sizeof (short));
+  }
+  if (Control_gcMode == GC_COPY)
+    majorPauses.kind = "full";
+  // the pause times of "-gc gen" are reported by default
+  if (Control_gcLog == GCLOG_NONE && Control_gcMode == GC_GEN)
+    Control_gcLog = GCLOG_SUMMARY;
+  if (Control_gcLog != GCLOG_NONE)
+    atexit (Tiger_gc_report);
   return;
 }
 
-// The "prev" pointer, pointing to the top frame on the GC stack. 
-// (see part A of Lab 4)
-void *prev = 0;
+// The top frame on the GC stack. (see part A of Lab 4)
+void *Tiger_gc_stack = 0;
+
+// A frame on the GC stack. Each Java method that may allocate pushes
+// one when it is entered and pops it when it returns, and keeps in it
+// its arguments and variables that hold references: these are the
+// roots, which the collector updates in place. (The C code generator
+// declares a frame of its own size for each such method, with the
+// same layout, and the method uses its variables from there.)
+struct Tiger_frame
+{
+  struct Tiger_frame *prev; // the frame of the caller, 0 for the bottom
+  long nroots;
+  void *roots[];
+};
 
+// The first field of every vtable: which fields of the objects of
+// the class hold references, one character each, in the order of
+// the structure after "vptr": '1' for a reference (an object or an
+// array), '0' for an int.
+struct Tiger_vtable
+{
+  const char *gc_map;
+};
 
 
 //===============================================================//
 // Object Model And allocation
 
-
-// Lab 4: exercise 11:
-// "new" a new object, do necessary initializations, and
-// return the pointer (reference).
 /*    ----------------
-      | vptr      ---|----> (points to the virtual method table)
-      |--------------|
-      | isObjOrArray | (0: for normal objects)
+      | forwarding   | (the copy, while collecting; 0 otherwise)
       |--------------|
-      | length       | (this field should be empty for normal objects)
+      | isObjOrArray | (0: for normal objects, 1: for arrays, 2: large)
       |--------------|
-      | forwarding   | 
+      | length       | (objects: size in bytes, arrays: elements)
       |--------------|\
-p---->| v_0          | \      
+p---->| vptr / e_0   | \
       |--------------|  s
       | ...          |  i
       |--------------|  z
       | v_{size-1}   | /e
       ----------------/
 */
-// Try to allocate an object in the "from" space of the Java
-// heap. Read Tiger book chapter 13.3 for details on the
-// allocation.
-// There are two cases to consider:
-//   1. If the "from" space has enough space to hold this object, then
-//      allocation succeeds, return the apropriate address (look at
-//      the above figure, be careful);
-//   2. if there is no enough space left in the "from" space, then
-//      you should call the function "Tiger_gc()" to collect garbages.
-//      and after the collection, there are still two sub-cases:
-//        a: if there is enough space, you can do allocations just as case 1; 
-//        b: if there is still no enough space, you can just issue
-//           an error message ("OutOfMemory") and exit.
-//           (However, a production compiler will try to expand
-//           the Java heap.)
+// Every object and array comes after a header, and the reference
+// "p" to it points just past the header: at the "vptr" of an object,
+// so that it is a pointer to its C structure, and at the first
+// element of an array, so that it is a plain C array.
+struct Tiger_header
+{
+  void *forwarding;
+  int isObjOrArray;
+  int length;
+};
+
+#define TIGER_OBJECT 0
+#define TIGER_ARRAY 1
+#define TIGER_LARGE_ARRAY 2
+
+#define HEADER(p) ((struct Tiger_header *)(p) - 1)
+// bytes taken in the heap by an object or array of "payload" bytes
+#define ALLOC_SIZE(payload) \
+  ((sizeof (struct Tiger_header) + (payload) + sizeof (void *) - 1) \
+   / sizeof (void *) * sizeof (void *))
+// bytes taken in the heap by the object or array "h" is the header of
+#define HEAP_SIZE(h) \
+  ALLOC_SIZE ((h)->isObjOrArray == TIGER_OBJECT \
+              ? (long)(h)->length \
+              : (long)(h)->length * sizeof (int))
+
+static void Tiger_full_gc ();
+static void Tiger_gen_gc (int major);
+static void Tiger_collect_all ();
+
+// Record that the object or array "p" is in the old space, for the
+// cards to find it.
+static void Tiger_note_object (void *p)
+{
+  long c = CARD (p);
+  if (firstObject[c] < 0)
+    firstObject[c] = (char *)p - CARD_START (c);
+}
+
+// Allocate "bytes" in the old space of "-gc gen": for what never fits
+// in the nursery. There must be room left to promote the nursery
+// into, so collect if there is not.
+static struct Tiger_header *Tiger_old_alloc (long bytes)
+{
+  long young = nursery.free - nursery.start;
+  if (heap.fromFree + bytes + young > heap.from + heap.size) {
+    Tiger_gen_gc (0);
+    if (heap.fromFree + bytes > heap.from + heap.size) {
+      fprintf (stderr, "OutOfMemory: %ld more bytes in a heap of %d\n",
+               bytes, 2 * heap.size);
+      exit (1);
+    }
+  }
+  struct Tiger_header *h = (struct Tiger_header *)heap.fromFree;
+  heap.fromFree += bytes;
+  Tiger_note_object (h + 1);
+  if (nursery.limit > nursery.start + (heap.from + heap.size - heap.fromFree))
+    nursery.limit = nursery.start + (heap.from + heap.size - heap.fromFree);
+  return h;
+}
+
+// Allocate "bytes" in the nursery, collecting if it is full.
+static struct Tiger_header *Tiger_young_alloc (long bytes)
+{
+  if (nursery.free + bytes > nursery.limit) {
+    if (bytes > nursery.end - nursery.start)
+      return Tiger_old_alloc (bytes);
+    Tiger_gen_gc (0);
+    if (nursery.free + bytes > nursery.limit) {
+      fprintf (stderr, "OutOfMemory: %ld more bytes in a heap of %d\n",
+               bytes, 2 * heap.size + (int)(nursery.end - nursery.start));
+      exit (1);
+    }
+  }
+  struct Tiger_header *h = (struct Tiger_header *)nursery.free;
+  nursery.free += bytes;
+  return h;
+}
+
+// Allocate "bytes" in the "from" space, collecting once if it is
+// full, and exit if even that does not leave enough room. Allocation
+// is a bump of "fromFree": the heap is one contiguous run of objects
+// between "from" and "fromFree". With "-gc gen", it is a bump in the
+// nursery instead.
+static struct Tiger_header *Tiger_alloc (long bytes)
+{
+  struct Tiger_header *h;
+  if (Control_gcMode == GC_GEN)
+    h = Tiger_young_alloc (bytes);
+  else {
+    if (heap.fromFree + bytes > heap.from + heap.size) {
+      Tiger_full_gc ();
+      if (heap.fromFree + bytes > heap.from + heap.size) {
+        fprintf (stderr, "OutOfMemory: %ld more bytes in a heap of %d\n",
+                 bytes, 2 * heap.size);
+        exit (1);
+      }
+    }
+    h = (struct Tiger_header *)heap.fromFree;
+    heap.fromFree += bytes;
+  }
+  memset (h, 0, bytes);
+  stats.bytes += bytes;
+  return h;
+}
+
+// "new" a new object of the class of "vtable", whose C structure
+// takes "size" bytes, vptr included, and return the reference.
 void *Tiger_new (void *vtable, int size)
 {
-  // You should write 4 statements for this function.
-    // #1: "malloc" a chunk of memory (be careful of the size) :
-    int siz = size + sizeof(vtable);
-    //printf("%d\n", siz);
-    int *p = (int *)malloc(siz);
+  struct Tiger_header *h = Tiger_alloc (ALLOC_SIZE (size));
+  h->isObjOrArray = TIGER_OBJECT;
+  h->length = size;
+  stats.objects++;
+  void **p = (void **)(h + 1);
+  *p = vtable;
+  return p;
+}
 
-    // #2: clear this chunk of memory (zero off it):
-    memset(p, 0, siz);
+//===============================================================//
+// The large-object space
 
-    // #3: set up the "vptr" pointer to the value of "vtable":
-    *p = (int)vtable;
+// Int arrays of at least "-largeArray" kilobytes are allocated apart,
+// each in pages of its own from "mmap", and are never moved: so that
+// a collection does not copy them. A collection of the whole heap
+// marks those it finds, and afterwards unmaps the others. Together
+// they may take as many bytes as the heap.
+struct Tiger_large
+{
+  struct Tiger_large *next;
+  long size;        // mapped, in bytes
+  long marked;
+};
 
-    // #4: return the pointer
-    return p;
-  
+#define LARGE(h) ((struct Tiger_large *)(h) - 1)
+
+static struct Tiger_large *largeObjects;
+static int marking; // whether the current collection marks them
+
+// Allocate "bytes" in the large-object space, collecting the whole
+// heap once if it is full. The pages come zeroed.
+static struct Tiger_header *Tiger_large_alloc (long bytes)
+{
+  long page = sysconf (_SC_PAGESIZE);
+  long size = (sizeof (struct Tiger_large) + bytes + page - 1) / page * page;
+  if (largeBytes + size > Control_heapSize) {
+    Tiger_collect_all ();
+    if (largeBytes + size > Control_heapSize) {
+      fprintf (stderr, "OutOfMemory: %ld more bytes of large arrays in %d\n",
+               bytes, Control_heapSize);
+      exit (1);
+    }
+  }
+  struct Tiger_large *l = mmap (0, size, PROT_READ | PROT_WRITE,
+                                MAP_PRIVATE | MAP_ANONYMOUS, -1, 0);
+  if (l == MAP_FAILED) {
+    fprintf (stderr, "OutOfMemory: cannot map %ld bytes\n", size);
+    exit (1);
+  }
+  l->next = largeObjects;
+  l->size = size;
+  largeObjects = l;
+  largeBytes += size;
+  stats.bytes += bytes;
+  return (struct Tiger_header *)(l + 1);
 }
 
-// "new" an array of size "length", do necessary
-// initializations. And each array comes with an
-// extra "header" storing the array length and other information.
-/*    ----------------
-      | vptr         | (this field should be empty for an array)
-      |--------------|
-      | isObjOrArray | (1: for array)
-      |--------------|
-      | length       |
-      |--------------|
-      | forwarding   | 
-      |--------------|\
-p---->| e_0          | \      
-      |--------------|  s
-      | ...          |  i
-      |--------------|  z
-      | e_{length-1} | /e
-      ----------------/
-*/
-// Try to allocate an array object in the "from" space of the Java
-// heap. Read Tiger book chapter 13.3 for details on the
-// allocation.
-// There are two cases to consider:
-//   1. If the "from" space has enough space to hold this array object, then
-//      allocation succeeds, return the apropriate address (look at
-//      the above figure, be careful);
-//   2. if there is no enough space left in the "from" space, then
-//      you should call the function "Tiger_gc()" to collect garbages.
-//      and after the collection, there are still two sub-cases:
-//        a: if there is enough space, you can do allocations just as case 1; 
-//        b: if there is still no enough space, you can just issue
-//           an error message ("OutOfMemory") and exit.
-//           (However, a production compiler will try to expand
-//           the Java heap.)
+// Unmap the large arrays that are not marked, and unmark the others.
+static void Tiger_sweep_large ()
+{
+  struct Tiger_large **l = &largeObjects;
+  while (*l) {
+    struct Tiger_large *o = *l;
+    if (o->marked) {
+      o->marked = 0;
+      l = &o->next;
+      continue;
+    }
+    *l = o->next;
+    largeBytes -= o->size;
+    munmap (o, o->size);
+  }
+}
+
+// "new" an int array of "length" elements, and return the reference.
 void *Tiger_new_array (int length)
 {
-  // You can use the C "malloc" facilities, as above.
-    // Your code here:
-    int size = sizeof(int) * (length + 1);
-    int *p = (int *)malloc(size);
-    memset(p, 0, size);
-    *p = length;
-    return p + 1;
-  
+  if (length < 0) {
+    fprintf (stderr, "NegativeArraySize: %d\n", length);
+    exit (1);
+  }
+  long bytes = ALLOC_SIZE ((long)length * sizeof (int));
+  struct Tiger_header *h;
+  if (Control_largeArray && bytes >= Control_largeArray) {
+    h = Tiger_large_alloc (bytes);
+    h->isObjOrArray = TIGER_LARGE_ARRAY;
+  } else {
+    h = Tiger_alloc (bytes);
+    h->isObjOrArray = TIGER_ARRAY;
+  }
+  h->length = length;
+  stats.arrays++;
+  return h + 1;
 }
 
 //===============================================================//
 // The Gimple Garbage Collector
 
-// Lab 4, exercise 12:
-// A copying collector based-on Cheney's algorithm.
+// What the current collection moves: the objects in the nursery, and
+// those in [condemnedStart, condemnedEnd). The copies go at "*copyNext",
+// and with "-gc gen", are recorded for the cards.
+static char *condemnedStart;
+static char *condemnedEnd;
+static char **copyNext;
+
+// Copy the object or array "p" refers to to "*copyNext", unless it has
+// been already or is not being collected, and return its new
+// reference. The old header keeps the new reference as the forwarding
+// pointer.
+static void *Tiger_forward (void *p)
+{
+  if (p == 0)
+    return 0;
+  struct Tiger_header *h = HEADER (p);
+  if (((char *)h < condemnedStart || (char *)h >= condemnedEnd)
+      && ((char *)h < nursery.start || (char *)h >= nursery.free)) {
+    if (marking && h->isObjOrArray == TIGER_LARGE_ARRAY)
+      LARGE (h)->marked = 1;
+    return p;
+  }
+  if (h->forwarding)
+    return h->forwarding;
+
+  long bytes = HEAP_SIZE (h);
+  struct Tiger_header *copy = (struct Tiger_header *)*copyNext;
+  memcpy (copy, h, bytes);
+  *copyNext += bytes;
+  if (firstObject)
+    Tiger_note_object (copy + 1);
+  h->forwarding = copy + 1;
+  return copy + 1;
+}
+
+// Forward the reference fields of the object "p".
+// The fields are laid out as C lays out its structure: each at the
+// next multiple of its own size.
+static void Tiger_scan_object (void **p)
+{
+  struct Tiger_vtable *vtable = *p;
+  const char *map = vtable->gc_map;
+  long offset = sizeof (void *);
+  for (; *map; map++) {
+    long size = *map == '1' ? sizeof (void *) : sizeof (int);
+    offset = (offset + size - 1) / size * size;
+    if (*map == '1') {
+      void **field = (void **)((char *)p + offset);
+      *field = Tiger_forward (*field);
+    }
+    offset += size;
+  }
+}
+
+// Forward the roots on the GC stack.
+static void Tiger_scan_roots ()
+{
+  struct Tiger_frame *f;
+  for (f = Tiger_gc_stack; f; f = f->prev) {
+    long i;
+    for (i = 0; i < f->nroots; i++)
+      f->roots[i] = Tiger_forward (f->roots[i]);
+  }
+}
+
+// Scan the copies from "scan" on as a queue, copying what each
+// object refers to in turn, until there are no more.
+static void Tiger_scan_copies (char *scan)
+{
+  while (scan < *copyNext) {
+    struct Tiger_header *h = (struct Tiger_header *)scan;
+    if (h->isObjOrArray == TIGER_OBJECT)
+      Tiger_scan_object ((void **)(h + 1));
+    scan += HEAP_SIZE (h);
+  }
+}
+
+// Forward the reference fields of the objects on the dirty cards of
+// the old space below "end": these are the old objects that may
+// refer into the nursery.
+static void Tiger_scan_cards (char *end)
+{
+  long c;
+  for (c = CARD (heap.from); heap.from < end && c <= CARD (end - 1); c++) {
+    if (!cardTable[c] || firstObject[c] < 0)
+      continue;
+    char *cardEnd = CARD_START (c) + TIGER_CARD_SIZE;
+    char *p = CARD_START (c) + firstObject[c];
+    while (p < cardEnd && p < end) {
+      struct Tiger_header *h = HEADER (p);
+      if (h->isObjOrArray == TIGER_OBJECT)
+        Tiger_scan_object ((void **)p);
+      p += HEAP_SIZE (h);
+    }
+  }
+}
+
+// A copying collector based-on Cheney's algorithm: copy the objects
+// the roots on the GC stack refer to into the "to" space, then scan
+// the "to" space as a queue, copying what each object refers to in
+// turn, and swap the spaces. Only live objects are touched. The
+// large arrays that are not found are freed.
 static void Tiger_gc ()
 {
-  // Your code here:
-  
+  marking = 1;
+  heap.toStart = heap.to;
+  heap.toNext = heap.to;
+  condemnedStart = heap.from;
+  condemnedEnd = heap.from + heap.size;
+  copyNext = &heap.toNext;
+  if (firstObject) {
+    long c;
+    for (c = CARD (heap.to); c <= CARD (heap.to + heap.size - 1); c++)
+      firstObject[c] = -1;
+  }
+
+  Tiger_scan_roots ();
+  Tiger_scan_copies (heap.toStart);
+
+  char *from = heap.from;
+  heap.from = heap.to;
+  heap.fromFree = heap.toNext;
+  heap.to = from;
+  heap.toStart = 0;
+  heap.toNext = 0;
+  marking = 0;
+  Tiger_sweep_large ();
+}
+
+// A minor collection: copy what is live in the nursery to the end of
+// the "from" space. The roots are those on the GC stack and the old
+// objects on dirty cards. Afterwards nothing old refers into the
+// nursery, so all cards are clean.
+static void Tiger_minor_gc ()
+{
+  char *promoted = heap.fromFree;
+  condemnedStart = 0;
+  condemnedEnd = 0;
+  copyNext = &heap.fromFree;
+
+  Tiger_scan_roots ();
+  Tiger_scan_cards (promoted);
+  Tiger_scan_copies (promoted);
+
+  nursery.free = nursery.start;
+  memset (cardTable, 0, ncards);
+}
+
+// Run "collect", a collection of the kind of "pauses" that moves
+// what is in use in "condemned" bytes, and record it.
+static void Tiger_collect (void (*collect) (), struct Tiger_pauses *pauses,
+                           long condemned)
+{
+  long before = Tiger_in_use ();
+  if (before > stats.peak)
+    stats.peak = before;
+  long long start = Tiger_now ();
+  collect ();
+  long long t = Tiger_now () - start;
+  long after = Tiger_in_use ();
+  long survived = condemned - (before - after);
+
+  pauses->count++;
+  pauses->total += t;
+  if (t > pauses->max)
+    pauses->max = t;
+  pauses->condemned += condemned;
+  pauses->survived += survived;
+  stats.collections++;
+  if (Control_gcLog == GCLOG_EACH)
+    fprintf (stderr, "GC #%ld (%s): %ld of %ld bytes survived (%.1f%%), "
+             "%ld bytes in use, %lld ns\n",
+             stats.collections, pauses->kind, survived, condemned,
+             condemned ? 100.0 * survived / condemned : 0.0, after, t);
+}
+
+// A collection of the whole heap.
+static void Tiger_full_gc ()
+{
+  Tiger_collect (Tiger_gc, &majorPauses, Tiger_in_use ());
+}
+
+// The collection of "-gc gen": a minor collection, then a major one
+// if "major", or if the old space has less room left than the nursery
+// takes. The nursery may grow no larger than the room left, so that
+// the next minor collection always has room to promote it.
+static void Tiger_gen_gc (int major)
+{
+  Tiger_collect (Tiger_minor_gc, &minorPauses, nursery.free - nursery.start);
+
+  if (major || heap.from + heap.size - heap.fromFree < nursery.end - nursery.start)
+    Tiger_full_gc ();
+
+  long room = heap.from + heap.size - heap.fromFree;
+  nursery.limit = nursery.end;
+  if (room < nursery.end - nursery.start)
+    nursery.limit = nursery.start + room;
+}
+
+// A collection of the whole heap, with either collector.
+static void Tiger_collect_all ()
+{
+  if (Control_gcMode == GC_GEN)
+    Tiger_gen_gc (1);
+  else
+    Tiger_full_gc ();
+}
+
+static void Tiger_gc_report_pauses (struct Tiger_pauses *p)
+{
+  fprintf (stderr, "GC: %ld %s collections, %.3f ms in total, %.3f ms at most, "
+           "%.1f%% survived\n",
+           p->count, p->kind, p->total / 1e6, p->max / 1e6,
+           p->condemned ? 100.0 * p->survived / p->condemned : 0.0);
+}
+
+// At exit, with "-gcLog", "-gcStats" or "-gc gen": the statistics.
+static void Tiger_gc_report ()
+{
+  if (Tiger_in_use () > stats.peak)
+    stats.peak = Tiger_in_use ();
+  fprintf (stderr, "GC: %lld bytes allocated in %ld objects and %ld arrays\n",
+           stats.bytes, stats.objects, stats.arrays);
+  fprintf (stderr, "GC: %ld collections, peak heap %ld bytes\n",
+           stats.collections, stats.peak);
+  if (Control_gcMode == GC_GEN)
+    Tiger_gc_report_pauses (&minorPauses);
+  Tiger_gc_report_pauses (&majorPauses);
 }
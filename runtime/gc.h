@@ -0,0 +1,17 @@
+#ifndef GC_H
+#define GC_H
+
+#include <stdint.h>
+
+// What the generated C shares with the collector: the card table,
+// and the write barrier that marks it. "Tiger_cards" is biased, so
+// that the card of "p" is "Tiger_cards[(uintptr_t)p >> TIGER_CARD_BITS]".
+#define TIGER_CARD_BITS 9
+
+extern char *Tiger_cards;
+
+// after a reference is stored into a field of the object "p"
+#define Tiger_write_barrier(p) \
+  (Tiger_cards[(uintptr_t)(p) >> TIGER_CARD_BITS] = 1)
+
+#endif
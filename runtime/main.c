@@ -3,21 +3,20 @@
 #include <string.h>
 
 extern void Tiger_heap_init (int);
+extern int Tiger_main ();
 
 int main (int argc, char **argv)
 {
-  // Lab 4, exercise 13:
-  // You should add some command arguments to the generated executable
-  // to control the behaviour of your Gimple garbage collector.
-  // For instance, you should run:
+  // The arguments between "@tiger" and "@" control the runtime,
+  // for instance:
   //   $ a.out @tiger -heapSize 1 @
-  // to set the Java heap size to 1K. Or you can run
+  // sets the Java heap size to 1K, and
+  //   $ a.out @tiger -gc gen @
+  // collects it generationally; and
   //   $ a.out @tiger -gcLog @
-  // to generate the log (which is discussed in this exercise).
-  // You can use the offered function in file "control.c"
-  // and "command-line.c"  
-  // Your code here:
-  
+  // logs each collection to stderr.
+  CommandLine_doarg (argc, argv);
+
   // initialize the Java heap
   Tiger_heap_init (Control_heapSize);
 
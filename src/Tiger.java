@@ -8,7 +8,9 @@ import java.io.InputStream;
 
 import ast.Ast.Program;
 import lexer.Lexer;
+import lexer.ParallelLexer;
 import lexer.Token;
+import lexer.TokenStream;
 import parser.Parser;
 import control.CommandLine;
 import control.Control;
@@ -16,7 +18,7 @@ import control.Control;
 public class Tiger {
     public static void main(String[] args) {
         InputStream fstream;
-        Parser parser;
+        Parser parser = null;
 
         // ///////////////////////////////////////////////////////
         // handle command line arguments
@@ -90,12 +92,100 @@ public class Tiger {
                     token = lexer.nextToken();
                 }
                 fstream.close();
+                if (!lexer.diagnostics().isEmpty())
+                    lexer.diagnostics().abort(lexer.diagnostics().count() + " lexical error(s)");
             } catch (Exception e) {
                 e.printStackTrace();
             }
             System.exit(1);
         }
 
+        // /////////////////////////////////////////////////////
+        // time the lexer on this file: from scratch, in parallel, and
+        // incrementally after a small edit.
+        if (Control.ConLexer.bench > 0) {
+            char[] buf = null;
+            try {
+                fstream = new BufferedInputStream(new FileInputStream(fname));
+                buf = new Lexer(fname, fstream).buffer();
+                fstream.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            System.out.println("Benchmarking the lexer (best of "
+                    + Control.ConLexer.bench + " rounds):");
+
+            TokenStream tokens = null;
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < Control.ConLexer.bench; i++) {
+                long start = System.nanoTime();
+                tokens = new TokenStream(new Lexer(fname, buf));
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.println("  Sequential: " + tokens.size() + " tokens in "
+                    + (best / 1000) + " us");
+
+            if (Control.ConLexer.jobs > 1) {
+                int jobs = Control.ConLexer.jobs;
+                TokenStream par = null;
+                best = Long.MAX_VALUE;
+                for (int i = 0; i < Control.ConLexer.bench; i++) {
+                    long start = System.nanoTime();
+                    par = ParallelLexer.lex(fname, buf, jobs, jobs);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                System.out.println("  Parallel (" + jobs + " chunks): " + (best / 1000)
+                        + " us, " + (par.sameTokens(tokens) ? "same tokens as" : "DIFFERENT tokens from")
+                        + " sequential lexing");
+            }
+
+            // insert a newline before the middle token
+            int mid = tokens.start(tokens.size() / 2);
+            char[] edited = new char[buf.length + 1];
+            System.arraycopy(buf, 0, edited, 0, mid);
+            edited[mid] = '\n';
+            System.arraycopy(buf, mid, edited, mid + 1, buf.length - mid);
+            TokenStream relexed = null;
+            best = Long.MAX_VALUE;
+            for (int i = 0; i < Control.ConLexer.bench; i++) {
+                long start = System.nanoTime();
+                relexed = tokens.relex(fname, edited, mid, mid, mid + 1);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            boolean same = relexed.sameTokens(new TokenStream(new Lexer(fname, edited)));
+            System.out.println("  Incremental (one edit): " + (best / 1000) + " us, "
+                    + (same ? "same tokens as" : "DIFFERENT tokens from") + " lexing from scratch");
+            System.exit(1);
+        }
+
+        // /////////////////////////////////////////////////////
+        // time the parser on this file, lexed once up front (how deep
+        // it recurses is measured by "bench.ParserDepth").
+        if (Control.ConParser.bench > 0) {
+            TokenStream tokens = null;
+            try {
+                fstream = new BufferedInputStream(new FileInputStream(fname));
+                tokens = new TokenStream(new Lexer(fname, fstream));
+                fstream.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            System.out.println("Benchmarking the parser (best of "
+                    + Control.ConParser.bench + " rounds):");
+
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < Control.ConParser.bench; i++) {
+                tokens.seek(0);
+                long start = System.nanoTime();
+                new Parser(tokens).parse();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.println("  " + tokens.size() + " tokens in " + (best / 1000) + " us");
+            System.exit(1);
+        }
+
         // /////////////////////////////////////////////////////////
         // normal compilation phases.
         Program.T theAst = null;
@@ -120,12 +210,17 @@ public class Tiger {
         }
 
         // elaborate the AST, report all possible errors.
-        elaborator.ElaboratorVisitor elab = new elaborator.ElaboratorVisitor();
+        elaborator.ElaboratorVisitor elab = new elaborator.ElaboratorVisitor(parser.diagnostics());
         theAst.accept(elab);
 
-        // code generation
+        // code generation, with "-codegenjobs" a class per worker
+        int jobs = Control.ConCodeGen.jobs;
         switch (control.Control.ConCodeGen.codegen) {
             case Bytecode:
+                if (jobs > 1) {
+                    codegen.bytecode.TranslateVisitor.generate(theAst, jobs);
+                    break;
+                }
                 codegen.bytecode.TranslateVisitor trans = new codegen.bytecode.TranslateVisitor();
                 theAst.accept(trans);
                 codegen.bytecode.Ast.Program.T bytecodeAst = trans.program;
@@ -133,6 +228,14 @@ public class Tiger {
                 bytecodeAst.accept(ppbc);
                 break;
             case C:
+                if (Control.ConCodeGen.stream) {
+                    theAst.accept(new codegen.C.TranslateVisitor(new codegen.C.PrettyPrintVisitor()));
+                    break;
+                }
+                if (jobs > 1) {
+                    codegen.C.TranslateVisitor.generate(theAst, jobs);
+                    break;
+                }
                 codegen.C.TranslateVisitor transC = new codegen.C.TranslateVisitor();
                 theAst.accept(transC);
                 codegen.C.Ast.Program.T cAst = transC.program;
@@ -156,7 +259,7 @@ public class Tiger {
         // Your code here:
         Runtime run = Runtime.getRuntime();
         try {
-            String cmdd = "gcc " + fname + ".c runtime/runtime.c";
+            String cmdd = "gcc -Iruntime " + fname + ".c runtime/runtime.c";
             System.out.println(cmdd);
             run.exec(cmdd);
         } catch (IOException e) {
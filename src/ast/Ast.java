@@ -1,6 +1,6 @@
 package ast;
 
-import java.util.LinkedList;
+import util.Seq;
 
 public class Ast {
 
@@ -16,8 +16,15 @@ public class Ast {
             public abstract int getNum();
 
             public int lineNum;
+            public int offset = -1; // into the source, -1 if not known
         }
 
+        // The one instance of each primitive type. The elaborator
+        // compares types by identity, see "elaborator.Types".
+        public static final Boolean BOOLEAN = new Boolean();
+        public static final Int INT = new Int();
+        public static final IntArray INT_ARRAY = new IntArray();
+
         // boolean
         public static class Boolean extends T {
             public Boolean() {
@@ -117,6 +124,7 @@ public class Ast {
     public static class Dec {
         public static abstract class T implements ast.Acceptable {
             public int lineNum;
+            public int offset = -1;
         }
 
         public static class DecSingle extends T {
@@ -128,6 +136,12 @@ public class Ast {
                 this.id = id;
             }
 
+            public DecSingle(Type.T type, String id, int line) {
+                this.type = type;
+                this.id = id;
+                this.lineNum = line;
+            }
+
             @Override
             public void accept(Visitor v) {
                 v.visit(this);
@@ -140,6 +154,7 @@ public class Ast {
     public static class Exp {
         public static abstract class T implements ast.Acceptable {
             public int lineNum;
+            public int offset = -1;
         }
 
         // +
@@ -215,19 +230,19 @@ public class Ast {
         public static class Call extends T {
             public T exp;
             public String id;
-            public java.util.LinkedList<T> args;
+            public Seq<T> args;
             public String type; // type of first field "exp"
-            public java.util.LinkedList<Type.T> at; // arg's type
+            public Seq<Type.T> at; // arg's type
             public Type.T rt; // return type
 
-            public Call(T exp, String id, java.util.LinkedList<T> args) {
+            public Call(T exp, String id, Seq<T> args) {
                 this.exp = exp;
                 this.id = id;
                 this.args = args;
                 this.type = null;
             }
 
-            public Call(T exp, String id, java.util.LinkedList<T> args, int line) {
+            public Call(T exp, String id, Seq<T> args, int line) {
                 this.exp = exp;
                 this.id = id;
                 this.args = args;
@@ -498,6 +513,7 @@ public class Ast {
     public static class Stm {
         public static abstract class T implements ast.Acceptable {
             public int lineNum;
+            public int offset = -1;
         }
 
         // assign
@@ -552,9 +568,9 @@ public class Ast {
 
         // block
         public static class Block extends T {
-            public java.util.LinkedList<T> stms;
+            public Seq<T> stms;
 
-            public Block(java.util.LinkedList<T> stms) {
+            public Block(Seq<T> stms) {
                 this.stms = stms;
             }
 
@@ -637,19 +653,20 @@ public class Ast {
     public static class Method {
         public static abstract class T implements ast.Acceptable {
             public int lineNum;
+            public int offset = -1;
         }
 
         public static class MethodSingle extends T {
             public Type.T retType;
             public String id;
-            public LinkedList<Dec.T> formals;
-            public LinkedList<Dec.T> locals;
-            public LinkedList<Stm.T> stms;
+            public Seq<Dec.T> formals;
+            public Seq<Dec.T> locals;
+            public Seq<Stm.T> stms;
             public Exp.T retExp;
 
             public MethodSingle(Type.T retType, String id,
-                                LinkedList<Dec.T> formals, LinkedList<Dec.T> locals,
-                                LinkedList<Stm.T> stms, Exp.T retExp) {
+                                Seq<Dec.T> formals, Seq<Dec.T> locals,
+                                Seq<Stm.T> stms, Exp.T retExp) {
                 this.retType = retType;
                 this.id = id;
                 this.formals = formals;
@@ -659,8 +676,8 @@ public class Ast {
             }
 
             public MethodSingle(Type.T retType, String id,
-                                LinkedList<Dec.T> formals, LinkedList<Dec.T> locals,
-                                LinkedList<Stm.T> stms, Exp.T retExp, int line) {
+                                Seq<Dec.T> formals, Seq<Dec.T> locals,
+                                Seq<Stm.T> stms, Exp.T retExp, int line) {
                 this.retType = retType;
                 this.id = id;
                 this.formals = formals;
@@ -680,23 +697,35 @@ public class Ast {
     // class
     public static class Class {
         public static abstract class T implements ast.Acceptable {
+            public int lineNum;
+            public int offset = -1;
         }
 
         public static class ClassSingle extends T {
             public String id;
             public String extendss; // null for non-existing "extends"
-            public java.util.LinkedList<Dec.T> decs;
-            public java.util.LinkedList<ast.Ast.Method.T> methods;
+            public Seq<Dec.T> decs;
+            public Seq<ast.Ast.Method.T> methods;
 
             public ClassSingle(String id, String extendss,
-                               java.util.LinkedList<Dec.T> decs,
-                               java.util.LinkedList<ast.Ast.Method.T> methods) {
+                               Seq<Dec.T> decs,
+                               Seq<ast.Ast.Method.T> methods) {
                 this.id = id;
                 this.extendss = extendss;
                 this.decs = decs;
                 this.methods = methods;
             }
 
+            public ClassSingle(String id, String extendss,
+                               Seq<Dec.T> decs,
+                               Seq<ast.Ast.Method.T> methods, int line) {
+                this.id = id;
+                this.extendss = extendss;
+                this.decs = decs;
+                this.methods = methods;
+                this.lineNum = line;
+            }
+
             @Override
             public void accept(Visitor v) {
                 v.visit(this);
@@ -736,9 +765,9 @@ public class Ast {
 
         public static class ProgramSingle extends T {
             public MainClass.T mainClass;
-            public LinkedList<Class.T> classes;
+            public Seq<Class.T> classes;
 
-            public ProgramSingle(MainClass.T mainClass, LinkedList<Class.T> classes) {
+            public ProgramSingle(MainClass.T mainClass, Seq<Class.T> classes) {
                 this.mainClass = mainClass;
                 this.classes = classes;
             }
@@ -51,28 +51,28 @@ public class Fac {
     static MainClass.T factorial = new MainClassSingle(
             "Factorial", "a", new Print(new Call(
             new NewObject("Fac"), "ComputeFac",
-            new util.Flist<Exp.T>().list(new Num(10)))));
+            util.Seq.<Exp.T>of(new Num(10)))));
 
     // // class "Fac"
     static ast.Ast.Class.T fac = new ast.Ast.Class.ClassSingle("Fac", null,
-            new util.Flist<Dec.T>().list(),
-            new util.Flist<Method.T>().list(new Method.MethodSingle(
-                    new Type.Int(), "ComputeFac", new util.Flist<Dec.T>()
-                    .list(new Dec.DecSingle(new Type.Int(), "num")),
-                    new util.Flist<Dec.T>().list(new Dec.DecSingle(
-                            new Type.Int(), "num_aux")), new util.Flist<Stm.T>()
-                    .list(new If(new Lt(new Id("num"),
+            util.Seq.<Dec.T>of(),
+            util.Seq.<Method.T>of(new Method.MethodSingle(
+                    new Type.Int(), "ComputeFac",
+                    util.Seq.<Dec.T>of(new Dec.DecSingle(new Type.Int(), "num")),
+                    util.Seq.<Dec.T>of(new Dec.DecSingle(
+                            new Type.Int(), "num_aux")),
+                    util.Seq.<Stm.T>of(new If(new Lt(new Id("num"),
                             new Num(1)), new Assign("num_aux",
                             new Num(1)), new Assign("num_aux",
                             new Times(new Id("num"), new Call(
                                     new This(), "ComputeFac",
-                                    new util.Flist<Exp.T>().list(new Sub(
+                                    util.Seq.<Exp.T>of(new Sub(
                                             new Id("num"), new Num(1)))))))),
                     new Id("num_aux"))));
 
     // program
     public static Program.T prog = new ProgramSingle(factorial,
-            new util.Flist<ast.Ast.Class.T>().list(fac));
+            util.Seq.<ast.Ast.Class.T>of(fac));
 
     // Lab2, exercise 2: you should write some code to
     // represent the program "test/Sum.java".
@@ -82,30 +82,30 @@ public class Fac {
     static MainClass.T sum = new MainClassSingle(
             "Sum", "a", new Print(new Call(
                     new NewObject("Doit"), "doit",
-            new util.Flist<Exp.T>().list(new Num(101))
+            util.Seq.<Exp.T>of(new Num(101))
     )));
 
     // class "Doit"
     static Ast.Class.T doit = new Ast.Class.ClassSingle("Doit", null,
-            new util.Flist<Dec.T>().list(
+            util.Seq.<Dec.T>of(
                     new Dec.DecSingle(new Type.Int(), "aa"),
                     new Dec.DecSingle(new Type.ClassType("Doit"), "bb")
             ),
-            new util.Flist<Method.T>().list(new Method.MethodSingle(
-                    new Type.Int(), "doit", new util.Flist<Dec.T>().list(
+            util.Seq.<Method.T>of(new Method.MethodSingle(
+                    new Type.Int(), "doit", util.Seq.<Dec.T>of(
                             new Dec.DecSingle(new Type.Int(), "n")),
-                    new util.Flist<Dec.T>().list(
+                    util.Seq.<Dec.T>of(
                             new Dec.DecSingle(new Type.Int(), "sum"),
                             new Dec.DecSingle(new Type.Int(), "i"),
                             new Dec.DecSingle(new Type.Boolean(), "a"),
                             new Dec.DecSingle(new Type.IntArray(), "b")),
-                    new util.Flist<Stm.T>().list(
+                    util.Seq.<Stm.T>of(
                             new Assign("i", new Num(0)),
                             new Assign("sum", new Num(0)),
                             new Assign("a", new Exp.True()),
                             new Stm.AssignArray("b", new Num(1), new Num(3)),
                             new Stm.While(new Lt(new Id("i"), new Id("n")),
-                                    new Stm.Block(new util.Flist<Stm.T>().list(
+                                    new Stm.Block(util.Seq.<Stm.T>of(
                                             new Assign("sum",
                                                     new Exp.Add(new Id("sum"), new Id("i"))),
                                             new Assign("i",
@@ -116,7 +116,7 @@ public class Fac {
 
     // program
     public static Program.T prog1 = new ProgramSingle(sum,
-            new util.Flist<Ast.Class.T>().list(doit));
+            util.Seq.<Ast.Class.T>of(doit));
 
 
 }
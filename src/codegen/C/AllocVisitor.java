@@ -0,0 +1,260 @@
+package codegen.C;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import ast.Ast.Class;
+import ast.Ast.Dec;
+import ast.Ast.Exp;
+import ast.Ast.MainClass;
+import ast.Ast.Method;
+import ast.Ast.Program;
+import ast.Ast.Stm;
+import ast.Ast.Type;
+import util.SymbolMap;
+
+// Which methods may allocate, and so may run the collector: those
+// that "new" an object or an array, and those that call a method
+// that may. A call "x.m(...)" may reach the "m" of any class, so the
+// methods are told apart by name only. Only the methods that may
+// allocate need a GC frame (see "PrettyPrintVisitor").
+
+public class AllocVisitor implements ast.Visitor {
+    // the methods that allocate themselves, and the methods each
+    // method calls, by "class.method"
+    private SymbolMap<Boolean> allocates;
+    private SymbolMap<ArrayList<String>> calls;
+    private HashSet<String> allocating; // method names that may allocate
+
+    private boolean allocated; // in the current method
+    private ArrayList<String> called; // in the current method
+
+    public AllocVisitor() {
+        this.allocates = new SymbolMap<Boolean>();
+        this.calls = new SymbolMap<ArrayList<String>>();
+        this.allocating = new HashSet<String>();
+    }
+
+    // whether or not method "m" of class "c" may allocate; "main"
+    // for the main method
+    public boolean mayAllocate(String c, String m) {
+        String key = c + "." + m;
+        if (this.allocates.get(key) == Boolean.TRUE)
+            return true;
+        ArrayList<String> ms = this.calls.get(key);
+        if (ms != null) {
+            for (String callee : ms)
+                if (this.allocating.contains(callee))
+                    return true;
+        }
+        return false;
+    }
+
+    // whether or not a call of a method named "m" may allocate
+    public boolean mayAllocate(String m) {
+        return this.allocating.contains(m);
+    }
+
+    private void enter() {
+        this.allocated = false;
+        this.called = new ArrayList<String>();
+    }
+
+    private void leave(String c, String m) {
+        String key = c + "." + m;
+        this.allocates.put(key, this.allocated);
+        this.calls.put(key, this.called);
+    }
+
+    // expressions
+    @Override
+    public void visit(Exp.Add e) {
+        e.left.accept(this);
+        e.right.accept(this);
+    }
+
+    @Override
+    public void visit(Exp.And e) {
+        e.left.accept(this);
+        e.right.accept(this);
+    }
+
+    @Override
+    public void visit(Exp.ArraySelect e) {
+        e.array.accept(this);
+        e.index.accept(this);
+    }
+
+    @Override
+    public void visit(Exp.Call e) {
+        e.exp.accept(this);
+        for (Exp.T x : e.args)
+            x.accept(this);
+        this.called.add(e.id);
+    }
+
+    @Override
+    public void visit(Exp.False e) {
+    }
+
+    @Override
+    public void visit(Exp.Id e) {
+    }
+
+    @Override
+    public void visit(Exp.Length e) {
+        e.array.accept(this);
+    }
+
+    @Override
+    public void visit(Exp.Lt e) {
+        e.left.accept(this);
+        e.right.accept(this);
+    }
+
+    @Override
+    public void visit(Exp.NewIntArray e) {
+        e.exp.accept(this);
+        this.allocated = true;
+    }
+
+    @Override
+    public void visit(Exp.NewObject e) {
+        this.allocated = true;
+    }
+
+    @Override
+    public void visit(Exp.Not e) {
+        e.exp.accept(this);
+    }
+
+    @Override
+    public void visit(Exp.Num e) {
+    }
+
+    @Override
+    public void visit(Exp.Sub e) {
+        e.left.accept(this);
+        e.right.accept(this);
+    }
+
+    @Override
+    public void visit(Exp.This e) {
+    }
+
+    @Override
+    public void visit(Exp.Times e) {
+        e.left.accept(this);
+        e.right.accept(this);
+    }
+
+    @Override
+    public void visit(Exp.True e) {
+    }
+
+    // statements
+    @Override
+    public void visit(Stm.Assign s) {
+        s.exp.accept(this);
+    }
+
+    @Override
+    public void visit(Stm.AssignArray s) {
+        s.index.accept(this);
+        s.exp.accept(this);
+    }
+
+    @Override
+    public void visit(Stm.Block s) {
+        for (Stm.T stm : s.stms)
+            stm.accept(this);
+    }
+
+    @Override
+    public void visit(Stm.If s) {
+        s.condition.accept(this);
+        s.thenn.accept(this);
+        s.elsee.accept(this);
+    }
+
+    @Override
+    public void visit(Stm.Print s) {
+        s.exp.accept(this);
+    }
+
+    @Override
+    public void visit(Stm.While s) {
+        s.condition.accept(this);
+        s.body.accept(this);
+    }
+
+    // type
+    @Override
+    public void visit(Type.Boolean t) {
+    }
+
+    @Override
+    public void visit(Type.ClassType t) {
+    }
+
+    @Override
+    public void visit(Type.Int t) {
+    }
+
+    @Override
+    public void visit(Type.IntArray t) {
+    }
+
+    // dec
+    @Override
+    public void visit(Dec.DecSingle d) {
+    }
+
+    // method
+    @Override
+    public void visit(Method.MethodSingle m) {
+        for (Stm.T s : m.stms)
+            s.accept(this);
+        m.retExp.accept(this);
+    }
+
+    // class
+    @Override
+    public void visit(Class.ClassSingle c) {
+        for (Method.T mthd : c.methods) {
+            this.enter();
+            mthd.accept(this);
+            this.leave(c.id, ((Method.MethodSingle) mthd).id);
+        }
+    }
+
+    // main class
+    @Override
+    public void visit(MainClass.MainClassSingle c) {
+        this.enter();
+        c.stm.accept(this);
+        this.leave(c.id, "main");
+    }
+
+    // program
+    @Override
+    public void visit(Program.ProgramSingle p) {
+        p.mainClass.accept(this);
+        for (Class.T c : p.classes)
+            c.accept(this);
+
+        // the names of the methods that may allocate, until there
+        // are no more
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (String key : this.allocates.names()) {
+                String m = key.substring(key.indexOf('.') + 1);
+                if (!this.allocating.contains(m) && this.mayAllocate(key.substring(0, key.indexOf('.')), m)) {
+                    this.allocating.add(m);
+                    changed = true;
+                }
+            }
+        }
+    }
+}
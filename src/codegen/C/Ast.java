@@ -125,10 +125,16 @@ public class Ast {
         public static class ArraySelect extends T {
             public T array;
             public T index;
+            // temporaries the array and the index go into first, if
+            // the index may allocate; null if not
+            public String arrayTemp;
+            public String indexTemp;
 
             public ArraySelect(T array, T index) {
                 this.array = array;
                 this.index = index;
+                this.arrayTemp = null;
+                this.indexTemp = null;
             }
 
             @Override
@@ -143,12 +149,17 @@ public class Ast {
             public T exp;
             public String id;
             public LinkedList<T> args;
+            // temporaries the arguments go into before the call, if
+            // they may allocate; null if not
+            public LinkedList<String> argTemps;
 
-            public Call(String assign, T exp, String id, java.util.LinkedList<T> args) {
+            public Call(String assign, T exp, String id, java.util.LinkedList<T> args,
+                        LinkedList<String> argTemps) {
                 this.assign = assign;
                 this.exp = exp;
                 this.id = id;
                 this.args = args;
+                this.argTemps = argTemps;
             }
 
             @Override
@@ -318,10 +329,18 @@ public class Ast {
         public static class Assign extends T {
             public String id;
             public Exp.T exp;
+            public boolean barrier; // a reference into a field of "this"
 
             public Assign(String id, Exp.T exp) {
                 this.id = id;
                 this.exp = exp;
+                this.barrier = false;
+            }
+
+            public Assign(String id, Exp.T exp, boolean barrier) {
+                this.id = id;
+                this.exp = exp;
+                this.barrier = barrier;
             }
 
             @Override
@@ -415,9 +434,9 @@ public class Ast {
 
         public static class ClassSingle extends T {
             public String id;
-            public LinkedList<codegen.C.Tuple> decs;
+            public ArrayList<codegen.C.Tuple> decs;
 
-            public ClassSingle(String id, LinkedList<codegen.C.Tuple> decs) {
+            public ClassSingle(String id, ArrayList<codegen.C.Tuple> decs) {
                 this.id = id;
                 this.decs = decs;
             }
@@ -439,10 +458,12 @@ public class Ast {
 
         public static class VtableSingle extends T {
             public String id; // name of the class
+            public String gcMap; // which fields hold references, see runtime/gc.c
             public java.util.ArrayList<codegen.C.Ftuple> ms; // all methods
 
-            public VtableSingle(String id, ArrayList<codegen.C.Ftuple> ms) {
+            public VtableSingle(String id, String gcMap, ArrayList<codegen.C.Ftuple> ms) {
                 this.id = id;
+                this.gcMap = gcMap;
                 this.ms = ms;
             }
 
@@ -468,10 +489,13 @@ public class Ast {
             public LinkedList<Dec.T> locals;
             public LinkedList<Stm.T> stms;
             public Exp.T retExp;
+            public boolean gcFrame; // whether it may allocate
+            public String retTemp; // the result, if it has a GC frame
 
             public MethodSingle(Type.T retType, String classId, String id,
                                 LinkedList<Dec.T> formals, LinkedList<Dec.T> locals,
-                                LinkedList<Stm.T> stms, Exp.T retExp) {
+                                LinkedList<Stm.T> stms, Exp.T retExp,
+                                boolean gcFrame, String retTemp) {
                 this.retType = retType;
                 this.classId = classId;
                 this.id = id;
@@ -479,6 +503,8 @@ public class Ast {
                 this.locals = locals;
                 this.stms = stms;
                 this.retExp = retExp;
+                this.gcFrame = gcFrame;
+                this.retTemp = retTemp;
             }
 
             @Override
@@ -499,10 +525,12 @@ public class Ast {
         public static class MainMethodSingle extends T {
             public LinkedList<Dec.T> locals;
             public Stm.T stm;
+            public boolean gcFrame; // whether it may allocate
 
-            public MainMethodSingle(LinkedList<Dec.T> locals, Stm.T stm) {
+            public MainMethodSingle(LinkedList<Dec.T> locals, Stm.T stm, boolean gcFrame) {
                 this.locals = locals;
                 this.stm = stm;
+                this.gcFrame = gcFrame;
             }
 
             @Override
@@ -1,21 +1,26 @@
 package codegen.C;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 
 import codegen.C.Ast.Dec;
 import codegen.C.Ast.Type;
+import util.SymbolMap;
 
 public class ClassBinding {
     public String extendss; // null for non-existing extends
     public boolean visited; // whether or not this class has been visited
-    public LinkedList<Tuple> fields; // all fields
+    public ArrayList<Tuple> fields; // all fields
     public ArrayList<Ftuple> methods; // all methods
 
+    // the slot of each field and method in "fields" and "methods",
+    // by name; filled in by "inherit".
+    private SymbolMap<Integer> fieldSlots;
+    private SymbolMap<Integer> methodSlots;
+
     public ClassBinding(String extendss) {
         this.extendss = extendss;
         this.visited = false;
-        this.fields = new LinkedList<Tuple>();
+        this.fields = new ArrayList<Tuple>();
         this.methods = new ArrayList<Ftuple>();
     }
 
@@ -28,12 +33,43 @@ public class ClassBinding {
         this.fields.add(t);
     }
 
-    public void update(java.util.LinkedList<Tuple> fs) {
-        this.fields = fs;
-    }
-
-    public void update(java.util.ArrayList<Ftuple> ms) {
-        this.methods = ms;
+    // Lay out this class over its parent's layout (null for none):
+    // the parent's fields and methods keep their slots, a field or
+    // method of the same name as one of them takes over its slot, and
+    // the others are appended. The slot maps start as copies of the
+    // parent's, so this is linear in the members of this class plus
+    // one array copy per table, not a search per member.
+    void inherit(ClassBinding parent) {
+        ArrayList<Tuple> ownFields = this.fields;
+        ArrayList<Ftuple> ownMethods = this.methods;
+        if (parent == null) {
+            this.fields = new ArrayList<Tuple>(ownFields.size());
+            this.methods = new ArrayList<Ftuple>(ownMethods.size());
+            this.fieldSlots = new SymbolMap<Integer>();
+            this.methodSlots = new SymbolMap<Integer>();
+        } else {
+            this.fields = new ArrayList<Tuple>(parent.fields.size() + ownFields.size());
+            this.fields.addAll(parent.fields);
+            this.methods = new ArrayList<Ftuple>(parent.methods.size() + ownMethods.size());
+            this.methods.addAll(parent.methods);
+            this.fieldSlots = new SymbolMap<Integer>(parent.fieldSlots);
+            this.methodSlots = new SymbolMap<Integer>(parent.methodSlots);
+        }
+        for (Tuple t : ownFields) {
+            Integer slot = this.fieldSlots.putIfAbsent(t.id, this.fields.size());
+            if (slot == null)
+                this.fields.add(t);
+            else
+                this.fields.set(slot, t);
+        }
+        for (Ftuple t : ownMethods) {
+            Integer slot = this.methodSlots.putIfAbsent(t.id, this.methods.size());
+            if (slot == null)
+                this.methods.add(t);
+            else
+                this.methods.set(slot, t);
+        }
+        this.visited = true;
     }
 
     public void putm(String c, Type.T ret,
@@ -2,12 +2,13 @@ package codegen.C;
 
 import codegen.C.Ast.Dec;
 import codegen.C.Ast.Type;
+import util.SymbolMap;
 
 public class ClassTable {
-    private java.util.Hashtable<String, ClassBinding> table;
+    private SymbolMap<ClassBinding> table;
 
     public ClassTable() {
-        this.table = new java.util.Hashtable<String, ClassBinding>();
+        this.table = new SymbolMap<ClassBinding>();
     }
 
     public void init(String current, String extendss) {
@@ -32,48 +33,19 @@ public class ClassTable {
         return;
     }
 
+    // Lay out class "c" and, first, all its superclasses that are
+    // not laid out yet (see "ClassBinding.inherit"). The chain is
+    // walked up and then laid out top down, without recursion, so
+    // deep hierarchies cost no stack.
     public void inherit(String c) {
-        ClassBinding cb = this.table.get(c);
-        if (cb.visited)
-            return;
-
-        if (cb.extendss == null) {
-            cb.visited = true;
-            return;
-        }
-
-        inherit(cb.extendss);
-
-        ClassBinding pb = this.table.get(cb.extendss);
-        // this tends to be very slow...
-        // need a much fancier data structure.
-        java.util.LinkedList<Tuple> newFields = new java.util.LinkedList<Tuple>();
-        newFields.addAll(pb.fields);
-        for (Tuple t : cb.fields) {
-            int index = newFields.indexOf(t);
-            if (index == -1) {
-                newFields.add(t);
-                continue;
-            }
-            newFields.set(index, t);
-        }
-        //newFields.addAll(cb.fields);
-        cb.update(newFields);
-        // methods;
-        java.util.ArrayList<Ftuple> newMethods = new java.util.ArrayList<Ftuple>();
-        newMethods.addAll(pb.methods);
-        for (codegen.C.Ftuple t : cb.methods) {
-            int index = newMethods.indexOf(t);
-            if (index == -1) {
-                newMethods.add(t);
-                continue;
-            }
-            newMethods.set(index, t);
+        java.util.ArrayDeque<ClassBinding> chain = new java.util.ArrayDeque<ClassBinding>();
+        for (ClassBinding cb = this.table.get(c); cb != null && !cb.visited;
+             cb = cb.extendss == null ? null : this.table.get(cb.extendss))
+            chain.push(cb);
+        while (!chain.isEmpty()) {
+            ClassBinding cb = chain.pop();
+            cb.inherit(cb.extendss == null ? null : this.table.get(cb.extendss));
         }
-        cb.update(newMethods);
-        // set the mark
-        cb.visited = true;
-        return;
     }
 
     // return null for non-existing keys
@@ -18,6 +18,7 @@ import codegen.C.Ast.Exp.Num;
 import codegen.C.Ast.Exp.Sub;
 import codegen.C.Ast.Exp.This;
 import codegen.C.Ast.Exp.Times;
+import codegen.C.Ast.MainMethod;
 import codegen.C.Ast.MainMethod.MainMethodSingle;
 import codegen.C.Ast.Method;
 import codegen.C.Ast.Method.MethodSingle;
@@ -35,16 +36,47 @@ import codegen.C.Ast.Type.IntArray;
 import codegen.C.Ast.Vtable;
 import codegen.C.Ast.Vtable.VtableSingle;
 import control.Control;
+import util.SymbolMap;
+
+// A method that may allocate (see "AllocVisitor") keeps its formals
+// and variables that hold references in a GC frame, a structure on
+// the C stack that the collector finds from "Tiger_gc_stack" (see
+// "runtime/gc.c"):
+//
+//   struct { void *prev; long nroots; struct { <references> } roots; } Tiger_frame_;
+//
+// so that it may update them when it moves what they refer to. Such a
+// variable "x" is "Tiger_frame_.roots.x" throughout the method. The
+// names of the runtime all start with "Tiger_", which no formal or
+// variable of the program is expected to use. The frame is
+// pushed on entry and popped before returning, and the number of
+// roots is known here, so the collector reads no more than it needs.
+// A method that cannot allocate needs no frame, and has none.
+//
+// A store of a reference into a field is followed by the write
+// barrier, which marks the card of the object, so that a collection
+// of the nursery finds the old objects that may refer into it. The
+// barrier comes from "runtime/gc.h", so the generated C is compiled
+// with "-Iruntime".
 
 public class PrettyPrintVisitor implements Visitor {
     private int indentLevel;
-    private java.io.BufferedWriter writer;
+    private util.Emitter out;
 
-    private MethodSingle currentMethod;
+    // how the formals and the variables of the current method are
+    // named in C; any other name is a field of "this"
+    private SymbolMap<String> names;
 
     public PrettyPrintVisitor() {
         this.indentLevel = 2;
-        currentMethod = null;
+        this.names = new SymbolMap<String>();
+    }
+
+    // a printer of methods into "out", for a part of the output
+    // made apart from the rest (see "TranslateVisitor.generate")
+    public PrettyPrintVisitor(util.Emitter out) {
+        this();
+        this.out = out;
     }
 
     private void indent() {
@@ -56,50 +88,53 @@ public class PrettyPrintVisitor implements Visitor {
     }
 
     private void printSpaces() {
-        int i = this.indentLevel;
-        while (i-- != 0)
-            this.say(" ");
+        this.out.spaces(this.indentLevel);
     }
 
     private void sayln(String s) {
-        say(s);
-        try {
-            this.writer.write("\n");
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
+        this.out.sayln(s);
     }
 
     private void say(String s) {
-        try {
-            this.writer.write(s);
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
+        this.out.say(s);
     }
 
     // /////////////////////////////////////////////////////
     // expressions
     @Override
     public void visit(Add e) {
-        e.left.accept(this);
+        this.operand(e.left);
         this.say(" + ");
-        e.right.accept(this);
+        this.operand(e.right);
         return;
     }
 
     @Override
     public void visit(And e) {
-        e.left.accept(this);
+        this.operand(e.left);
         this.say(" && ");
-        e.right.accept(this);
+        this.operand(e.right);
         return;
     }
 
     @Override
     public void visit(ArraySelect e) {
+        if (e.indexTemp != null) {
+            this.say("(");
+            this.sayName(e.arrayTemp);
+            this.say(" = ");
+            e.array.accept(this);
+            this.say(", ");
+            this.sayName(e.indexTemp);
+            this.say(" = ");
+            e.index.accept(this);
+            this.say(", ");
+            this.sayName(e.arrayTemp);
+            this.say("[");
+            this.sayName(e.indexTemp);
+            this.say("])");
+            return;
+        }
         e.array.accept(this);
         this.say("[");
         e.index.accept(this);
@@ -109,18 +144,40 @@ public class PrettyPrintVisitor implements Visitor {
 
     @Override
     public void visit(Call e) {
-        this.say("(" + e.assign + "=");
+        this.say("(");
+        this.sayName(e.assign);
+        this.say("=");
         e.exp.accept(this);
+        if (e.argTemps != null) {
+            java.util.Iterator<String> temps = e.argTemps.iterator();
+            for (Exp.T x : e.args) {
+                this.say(", ");
+                this.sayName(temps.next());
+                this.say(" = ");
+                x.accept(this);
+            }
+        }
         this.say(", ");
-        this.say(e.assign + "->vptr->" + e.id + "(" + e.assign);
+        this.sayName(e.assign);
+        this.say("->vptr->");
+        this.say(e.id);
+        this.say("(");
+        this.sayName(e.assign);
         int size = e.args.size();
         if (size == 0) {
             this.say("))");
             return;
         }
-        for (Exp.T x : e.args) {
-            this.say(", ");
-            x.accept(this);
+        if (e.argTemps != null) {
+            for (String t : e.argTemps) {
+                this.say(", ");
+                this.sayName(t);
+            }
+        } else {
+            for (Exp.T x : e.args) {
+                this.say(", ");
+                x.accept(this);
+            }
         }
         this.say("))");
         return;
@@ -128,24 +185,22 @@ public class PrettyPrintVisitor implements Visitor {
 
     @Override
     public void visit(Id e) {
-        if (this.isClassField(e.id)) {
-            this.say("this->");
-        }
-        this.say(e.id);
+        this.sayName(e.id);
     }
 
     @Override
     public void visit(Length e) {
-        this.say("sizeof(");
+        // the length in the header just before the elements
+        this.say("(((int *)(");
         e.array.accept(this);
-        this.say(")");
+        this.say("))[-1])");
     }
 
     @Override
     public void visit(Lt e) {
-        e.left.accept(this);
+        this.operand(e.left);
         this.say(" < ");
-        e.right.accept(this);
+        this.operand(e.right);
         return;
     }
 
@@ -159,42 +214,60 @@ public class PrettyPrintVisitor implements Visitor {
 
     @Override
     public void visit(NewObject e) {
-        this.say("((struct " + e.id + "*)(Tiger_new (&" + e.id
-                + "_vtable_, sizeof(struct " + e.id + "))))");
+        this.say("((struct ");
+        this.say(e.id);
+        this.say("*)(Tiger_new (&");
+        this.say(e.id);
+        this.say("_vtable_, sizeof(struct ");
+        this.say(e.id);
+        this.say("))))");
         return;
     }
 
     @Override
     public void visit(Not e) {
         this.say("!");
-        e.exp.accept(this);
+        this.operand(e.exp);
         return;
     }
 
+    // an operand of an operator, in parentheses if it is an operation
+    // itself, since the tree may not nest as C would read it
+    private void operand(Exp.T e) {
+        if (e instanceof Add || e instanceof And || e instanceof Lt
+                || e instanceof Sub || e instanceof Times) {
+            this.say("(");
+            e.accept(this);
+            this.say(")");
+            return;
+        }
+        e.accept(this);
+    }
+
     @Override
     public void visit(Num e) {
-        this.say(Integer.toString(e.num));
+        this.out.say(e.num);
         return;
     }
 
     @Override
     public void visit(Sub e) {
-        e.left.accept(this);
+        this.operand(e.left);
         this.say(" - ");
-        e.right.accept(this);
+        this.operand(e.right);
         return;
     }
 
     @Override
     public void visit(This e) {
-        this.say("this");
+        this.sayName("this");
     }
 
     @Override
     public void visit(Times e) {
-        e.left.accept(this);
+        this.operand(e.left);
         this.say(" * ");
-        e.right.accept(this);
+        this.operand(e.right);
         return;
     }
 
@@ -202,22 +275,24 @@ public class PrettyPrintVisitor implements Visitor {
     @Override
     public void visit(Assign s) {
         this.printSpaces();
-        if (this.isClassField(s.id)) {
-            this.say("this->");
-        }
-        this.say(s.id + " = ");
+        this.sayName(s.id);
+        this.say(" = ");
         s.exp.accept(this);
         this.sayln(";");
+        if (s.barrier) {
+            this.printSpaces();
+            this.say("Tiger_write_barrier (");
+            this.sayName("this");
+            this.sayln(");");
+        }
         return;
     }
 
     @Override
     public void visit(AssignArray s) {
         this.printSpaces();
-        if (this.isClassField(s.id)) {
-            this.say("this->");
-        }
-        this.say(s.id + "[");
+        this.sayName(s.id);
+        this.say("[");
         s.index.accept(this);
         this.say("] = ");
         s.exp.accept(this);
@@ -280,7 +355,9 @@ public class PrettyPrintVisitor implements Visitor {
     // type
     @Override
     public void visit(ClassType t) {
-        this.say("struct " + t.id + " *");
+        this.say("struct ");
+        this.say(t.id);
+        this.say(" *");
     }
 
     @Override
@@ -304,7 +381,6 @@ public class PrettyPrintVisitor implements Visitor {
     // method
     @Override
     public void visit(MethodSingle m) {
-        this.currentMethod = m;
         m.retType.accept(this);
         this.say(" " + m.classId + "_" + m.id + "(");
         int size = m.formals.size();
@@ -319,44 +395,116 @@ public class PrettyPrintVisitor implements Visitor {
         this.sayln(")");
         this.sayln("{");
 
-        for (Dec.T d : m.locals) {
-            DecSingle dec = (DecSingle) d;
-            this.say("  ");
-            dec.type.accept(this);
-            this.say(" " + dec.id + ";\n");
-        }
+        boolean framed = this.declare(m.formals, m.locals, m.gcFrame);
         this.sayln("");
         for (Stm.T s : m.stms)
             s.accept(this);
-        this.say("  return ");
-        m.retExp.accept(this);
-        this.sayln(";");
+        if (framed) {
+            this.say("  ");
+            this.sayName(m.retTemp);
+            this.say(" = ");
+            m.retExp.accept(this);
+            this.sayln(";");
+            this.sayln("  Tiger_gc_stack = Tiger_frame_.prev;");
+            this.say("  return ");
+            this.sayName(m.retTemp);
+            this.sayln(";");
+        } else {
+            this.say("  return ");
+            m.retExp.accept(this);
+            this.sayln(";");
+        }
         this.sayln("}");
         return;
     }
 
     @Override
     public void visit(MainMethodSingle m) {
-        this.currentMethod = null;
         this.sayln("int Tiger_main ()");
         this.sayln("{");
-        for (Dec.T dec : m.locals) {
-            this.say("  ");
-            DecSingle d = (DecSingle) dec;
-            d.type.accept(this);
-            this.say(" ");
-            this.sayln(d.id + ";");
-        }
+        boolean framed = this.declare(new java.util.LinkedList<Dec.T>(),
+                m.locals, m.gcFrame);
         m.stm.accept(this);
+        if (framed)
+            this.sayln("  Tiger_gc_stack = Tiger_frame_.prev;");
+        this.sayln("  return 0;");
         this.sayln("}\n");
         return;
     }
 
+    // Declare the variables of a method, and name its formals and
+    // variables. With "gcFrame", those that hold references go into
+    // a frame, which is pushed. Return whether there is a frame.
+    private boolean declare(java.util.List<Dec.T> formals, java.util.List<Dec.T> locals,
+                            boolean gcFrame) {
+        this.names = new SymbolMap<String>();
+        // the formals that hold references, then the variables
+        java.util.ArrayList<DecSingle> roots = new java.util.ArrayList<DecSingle>();
+        for (Dec.T d : formals) {
+            DecSingle dec = (DecSingle) d;
+            this.names.put(dec.id, dec.id);
+            if (gcFrame && !(dec.type instanceof Int))
+                roots.add(dec);
+        }
+        int nformals = roots.size();
+        for (Dec.T d : locals) {
+            DecSingle dec = (DecSingle) d;
+            this.names.put(dec.id, dec.id);
+            if (gcFrame && !(dec.type instanceof Int)) {
+                roots.add(dec);
+                continue;
+            }
+            this.say("  ");
+            dec.type.accept(this);
+            this.say(" " + dec.id + ";\n");
+        }
+        if (roots.isEmpty())
+            return false;
+
+        this.sayln("  struct");
+        this.sayln("  {");
+        this.sayln("    void *prev;");
+        this.sayln("    long nroots;");
+        this.sayln("    struct");
+        this.sayln("    {");
+        for (DecSingle dec : roots) {
+            this.say("      ");
+            dec.type.accept(this);
+            this.say(" " + dec.id + ";\n");
+        }
+        this.sayln("    } roots;");
+        this.sayln("  } Tiger_frame_;");
+        this.sayln("  Tiger_frame_.prev = Tiger_gc_stack;");
+        this.sayln("  Tiger_frame_.nroots = " + roots.size() + ";");
+        for (int i = 0; i < roots.size(); i++) {
+            DecSingle dec = roots.get(i);
+            String root = "Tiger_frame_.roots." + dec.id;
+            this.sayln("  " + root + " = " + (i < nformals ? dec.id : "0") + ";");
+            this.names.put(dec.id, root);
+        }
+        this.sayln("  Tiger_gc_stack = &Tiger_frame_;");
+        return true;
+    }
+
+    // "id" as a formal or variable of the current method, or else as
+    // a field of "this"
+    private void sayName(String id) {
+        String name = this.names.get(id);
+        if (name != null) {
+            this.say(name);
+            return;
+        }
+        this.say(this.names.get("this"));
+        this.say("->");
+        this.say(id);
+    }
+
     // vtables
     @Override
     public void visit(VtableSingle v) {
         this.sayln("struct " + v.id + "_vtable");
         this.sayln("{");
+        this.sayln("  const char *gc_map;");
         for (codegen.C.Ftuple t : v.ms) {
             this.say("  ");
             t.ret.accept(this);
@@ -370,6 +518,7 @@ public class PrettyPrintVisitor implements Visitor {
         this.sayln("struct " + v.id + "_vtable " + v.id + "_vtable_ = ");
         //this.sayln(v.id + "_vtable_ = ");
         this.sayln("{");
+        this.sayln("  \"" + v.gcMap + "\",");
         for (codegen.C.Ftuple t : v.ms) {
             this.say("  ");
             this.sayln(t.classs + "_" + t.id + ",");
@@ -397,85 +546,83 @@ public class PrettyPrintVisitor implements Visitor {
     // program
     @Override
     public void visit(ProgramSingle p) {
-        // we'd like to output to a file, rather than the "stdout".
-        try {
-            String outputName = null;
-            if (Control.ConCodeGen.outputName != null)
-                outputName = Control.ConCodeGen.outputName;
-            else if (Control.ConCodeGen.fileName != null)
-                outputName = Control.ConCodeGen.fileName + ".c";
-            else
-                outputName = "a.c";
-
-            this.writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
-                    new java.io.FileOutputStream(outputName)));
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
+        this.begin(p.classes, p.vtables);
+        for (Method.T m : p.methods) {
+            m.accept(this);
         }
+        this.end(p.vtables, p.mainMethod);
+    }
+
+    // The output file in three steps, for a program that is not at
+    // hand as a whole (see "TranslateVisitor(PrettyPrintVisitor)"):
+    // "begin" opens it and writes the structures and the vtable
+    // structures, then each method is written by "accept"ing it, and
+    // "end" writes the vtables and the main method and closes it.
+    public void begin(java.util.List<codegen.C.Ast.Class.T> classes,
+                      java.util.List<Vtable.T> vtables) {
+        // we'd like to output to a file, rather than the "stdout".
+        String outputName = null;
+        if (Control.ConCodeGen.outputName != null)
+            outputName = Control.ConCodeGen.outputName;
+        else if (Control.ConCodeGen.fileName != null)
+            outputName = Control.ConCodeGen.fileName + ".c";
+        else
+            outputName = "a.c";
+
+        this.out = new util.Emitter(outputName);
 
         this.sayln("// This is automatically generated by the Tiger compiler.");
         this.sayln("// Do NOT modify!\n");
 
+        this.sayln("// runtime");
+        this.sayln("#include \"gc.h\"");
+        this.sayln("extern void *Tiger_gc_stack;");
+        this.sayln("void *Tiger_new (void *vtable, int size);");
+        this.sayln("void *Tiger_new_array (int length);");
+        this.sayln("int System_out_println (int i);");
+        this.sayln("");
+
         this.sayln("// structures");
-        for (codegen.C.Ast.Class.T c : p.classes) {
+        for (codegen.C.Ast.Class.T c : classes) {
             c.accept(this);
         }
 
         this.sayln("// vtables structures");
-        for (Vtable.T v : p.vtables) {
+        for (Vtable.T v : vtables) {
             v.accept(this);
         }
         this.sayln("");
 
-//        // declare
-//        for (Vtable.T v : p.vtables) {
-//            VtableSingle vs = (VtableSingle) v;
-//            this.sayln("struct " + vs.id + "_vtable " + vs.id + "_vtable_;");
-//        }
+        // declare
+        for (Vtable.T v : vtables) {
+            VtableSingle vs = (VtableSingle) v;
+            this.sayln("struct " + vs.id + "_vtable " + vs.id + "_vtable_;");
+        }
+        this.sayln("");
 
         this.sayln("// methods");
-        for (Method.T m : p.methods) {
-            m.accept(this);
-        }
+    }
+
+    // the methods printed into "part", between "begin" and "end"
+    public void say(util.Emitter part) {
+        this.out.say(part);
+    }
+
+    public void end(java.util.List<Vtable.T> vtables, MainMethod.T mainMethod) {
         this.sayln("");
 
         this.sayln("// vtables");
-        for (Vtable.T v : p.vtables) {
+        for (Vtable.T v : vtables) {
             outputVtable((VtableSingle) v);
         }
         this.sayln("");
 
         this.sayln("// main method");
-        p.mainMethod.accept(this);
+        mainMethod.accept(this);
         this.sayln("");
 
         this.say("\n\n");
 
-        try {
-            this.writer.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-
+        this.out.close();
     }
-
-    private boolean isClassField(String id) {
-        if (currentMethod == null) {
-            return false;
-        }
-        for (Dec.T dec : this.currentMethod.formals) {
-            if (((DecSingle)dec).id.equals(id)) {
-                return false;
-            }
-        }
-        for (Dec.T dec : this.currentMethod.locals) {
-            if (((DecSingle)dec).id.equals(id)) {
-                return false;
-            }
-        }
-        return true;
-    }
-
 }
@@ -1,6 +1,9 @@
 package codegen.C;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import codegen.C.Ast.Class;
 import codegen.C.Ast.Class.ClassSingle;
@@ -30,9 +33,24 @@ import codegen.C.Ast.Vtable;
 import codegen.C.Ast.Vtable.VtableSingle;
 
 // Given a Java ast, translate it into a C ast and outputs it.
+//
+// Built with a printer, it streams instead: the structures and the
+// vtables are written from the class table up front, and each method
+// as soon as it is translated, so only one method of the C ast is in
+// memory at a time, and "program" stays null.
+//
+// "generate" translates and prints the classes on parallel workers.
+//
+// The collector may move objects at any allocation, so where an
+// expression that may allocate is evaluated in between, C must not
+// be left to load a reference early: the receiver and the arguments
+// of such a call are evaluated into temporaries first, and so are the
+// right-hand side of a store into a field and the index and value of
+// a store into an array.
 
 public class TranslateVisitor implements ast.Visitor {
     public Program.T program;
+    private PrettyPrintVisitor out; // null if not streaming
     private ClassTable table;
     private String classId;
     private Type.T type; // type after translation
@@ -45,6 +63,10 @@ public class TranslateVisitor implements ast.Visitor {
     private LinkedList<Vtable.T> vtables;
     private LinkedList<Method.T> methods;
     private MainMethod.T mainMethod;
+    private AllocVisitor alloc; // which methods may allocate
+    private int temps; // temporaries made in the current method
+    private util.SymbolMap<Boolean> localIds; // formals and locals
+    private boolean allocates; // whether what was translated may allocate
 
     public TranslateVisitor() {
         this.table = new ClassTable();
@@ -59,12 +81,37 @@ public class TranslateVisitor implements ast.Visitor {
         this.methods = new LinkedList<Method.T>();
         this.mainMethod = null;
         this.program = null;
+        this.out = null;
+        this.alloc = null;
+        this.temps = 0;
+        this.localIds = null;
+        this.allocates = false;
+    }
+
+    public TranslateVisitor(PrettyPrintVisitor out) {
+        this();
+        this.out = out;
+    }
+
+    // a worker for one class, with the table of "trans"
+    private TranslateVisitor(TranslateVisitor trans) {
+        this();
+        this.table = trans.table;
+        this.alloc = trans.alloc;
     }
 
     // //////////////////////////////////////////////////////
     //
+    // a temporary of the current method, numbered within it, so that
+    // no method depends on the ones translated before it
     public String genId() {
-        return util.Temp.next();
+        return "x_" + this.temps++;
+    }
+
+    private String newTemp(Type.T type) {
+        String id = this.genId();
+        this.tmpVars.add(new Dec.DecSingle(type, id));
+        return id;
     }
 
     // /////////////////////////////////////////////////////
@@ -93,24 +140,44 @@ public class TranslateVisitor implements ast.Visitor {
     public void visit(ast.Ast.Exp.ArraySelect e) {
         e.array.accept(this);
         Exp.T array = this.exp;
+        boolean allocates = this.allocates;
+        this.allocates = false;
         e.index.accept(this);
         Exp.T index = this.exp;
-        this.exp = new Exp.ArraySelect(array, index);
+        Exp.ArraySelect select = new Exp.ArraySelect(array, index);
+        if (this.allocates) {
+            // the array may move while the index is computed
+            select.arrayTemp = this.newTemp(new Type.IntArray());
+            select.indexTemp = this.newTemp(new Type.Int());
+        }
+        this.allocates = allocates || this.allocates;
+        this.exp = select;
         return;
     }
 
     @Override
     public void visit(ast.Ast.Exp.Call e) {
         e.exp.accept(this);
-        String newid = this.genId();
-        this.tmpVars.add(new Dec.DecSingle(new Type.ClassType(e.type), newid));
+        String newid = this.newTemp(new Type.ClassType(e.type));
         Exp.T exp = this.exp;
+        boolean allocates = this.allocates;
+        this.allocates = false;
         LinkedList<Exp.T> args = new LinkedList<Exp.T>();
         for (ast.Ast.Exp.T x : e.args) {
             x.accept(this);
             args.add(this.exp);
         }
-        this.exp = new Call(newid, exp, e.id, args);
+        // arguments that may allocate go into temporaries
+        LinkedList<String> argTemps = null;
+        if (this.allocates) {
+            argTemps = new LinkedList<String>();
+            for (ast.Ast.Type.T t : e.at) {
+                t.accept(this);
+                argTemps.add(this.newTemp(this.type));
+            }
+        }
+        this.allocates = allocates || this.allocates || this.alloc.mayAllocate(e.id);
+        this.exp = new Call(newid, exp, e.id, args, argTemps);
         return;
     }
 
@@ -149,12 +216,14 @@ public class TranslateVisitor implements ast.Visitor {
         e.exp.accept(this);
         Exp.T tmp = this.exp;
         this.exp = new Exp.NewIntArray(tmp);
+        this.allocates = true;
         return;
     }
 
     @Override
     public void visit(ast.Ast.Exp.NewObject e) {
         this.exp = new NewObject(e.id);
+        this.allocates = true;
         return;
     }
 
@@ -207,16 +276,43 @@ public class TranslateVisitor implements ast.Visitor {
     // statements
     @Override
     public void visit(ast.Ast.Stm.Assign s) {
+        this.allocates = false;
         s.exp.accept(this);
-        this.stm = new Assign(s.id, this.exp);
+        boolean field = this.localIds.get(s.id) == null;
+        // a reference stored into a field needs the write barrier
+        boolean barrier = field && (s.type instanceof ast.Ast.Type.ClassType
+                || s.type instanceof ast.Ast.Type.IntArray);
+        if (this.allocates && field) {
+            // a field: "this" may move while the value is computed
+            s.type.accept(this);
+            String t = this.newTemp(this.type);
+            LinkedList<Stm.T> stms = new LinkedList<Stm.T>();
+            stms.add(new Assign(t, this.exp));
+            stms.add(new Assign(s.id, new Id(t), barrier));
+            this.stm = new Stm.Block(stms);
+            return;
+        }
+        this.stm = new Assign(s.id, this.exp, barrier);
         return;
     }
 
     @Override
     public void visit(ast.Ast.Stm.AssignArray s) {
+        this.allocates = false;
         s.index.accept(this);
         Exp.T index = this.exp;
         s.exp.accept(this);
+        if (this.allocates) {
+            // the array may move while the index or value is computed
+            String i = this.newTemp(new Type.Int());
+            String v = this.newTemp(new Type.Int());
+            LinkedList<Stm.T> stms = new LinkedList<Stm.T>();
+            stms.add(new Assign(i, index));
+            stms.add(new Assign(v, this.exp));
+            stms.add(new Stm.AssignArray(s.id, new Id(i), new Id(v)));
+            this.stm = new Stm.Block(stms);
+            return;
+        }
         this.stm = new Stm.AssignArray(s.id, index, this.exp);
         return;
     }
@@ -296,6 +392,12 @@ public class TranslateVisitor implements ast.Visitor {
     @Override
     public void visit(ast.Ast.Method.MethodSingle m) {
         this.tmpVars = new LinkedList<Dec.T>();
+        this.temps = 0;
+        this.localIds = new util.SymbolMap<Boolean>();
+        for (ast.Ast.Dec.T d : m.formals)
+            this.localIds.put(((ast.Ast.Dec.DecSingle) d).id, true);
+        for (ast.Ast.Dec.T d : m.locals)
+            this.localIds.put(((ast.Ast.Dec.DecSingle) d).id, true);
         m.retType.accept(this);
         Type.T newRetType = this.type;
         LinkedList<Dec.T> newFormals = new LinkedList<Dec.T>();
@@ -317,41 +419,43 @@ public class TranslateVisitor implements ast.Visitor {
         }
         m.retExp.accept(this);
         Exp.T retExp = this.exp;
+        // a method that may allocate keeps its references in a GC
+        // frame, and pops it after computing the result into "retTemp"
+        boolean gcFrame = this.alloc.mayAllocate(this.classId, m.id);
+        String retTemp = gcFrame ? this.newTemp(newRetType) : null;
         for (Dec.T dec : this.tmpVars) {
             locals.add(dec);
         }
         this.method = new MethodSingle(newRetType, this.classId, m.id,
-                newFormals, locals, newStm, retExp);
+                newFormals, locals, newStm, retExp, gcFrame, retTemp);
         return;
     }
 
     // class
     @Override
     public void visit(ast.Ast.Class.ClassSingle c) {
-        ClassBinding cb = this.table.get(c.id);
-        this.classes.add(new ClassSingle(c.id, cb.fields));
-        this.vtables.add(new VtableSingle(c.id, cb.methods));
         this.classId = c.id;
         for (ast.Ast.Method.T m : c.methods) {
             m.accept(this);
-            this.methods.add(this.method);
+            if (this.out != null)
+                this.method.accept(this.out);
+            else
+                this.methods.add(this.method);
         }
+        this.method = null;
         return;
     }
 
     // main class
     @Override
     public void visit(ast.Ast.MainClass.MainClassSingle c) {
-        ClassBinding cb = this.table.get(c.id);
-        Class.T newc = new ClassSingle(c.id, cb.fields);
-        this.classes.add(newc);
-        this.vtables.add(new VtableSingle(c.id, cb.methods));
-
         this.tmpVars = new LinkedList<Dec.T>();
+        this.temps = 0;
+        this.localIds = new util.SymbolMap<Boolean>();
 
         c.stm.accept(this);
         MainMethod.T mthd = new MainMethodSingle(
-                this.tmpVars, this.stm);
+                this.tmpVars, this.stm, this.alloc.mayAllocate(c.id, "main"));
         this.mainMethod = mthd;
         return;
     }
@@ -365,7 +469,7 @@ public class TranslateVisitor implements ast.Visitor {
         return;
     }
 
-    public void scanClasses(java.util.LinkedList<ast.Ast.Class.T> cs) {
+    public void scanClasses(util.Seq<ast.Ast.Class.T> cs) {
         // put empty chuncks into the table
         for (ast.Ast.Class.T c : cs) {
             ast.Ast.Class.ClassSingle cc = (ast.Ast.Class.ClassSingle) c;
@@ -383,7 +487,7 @@ public class TranslateVisitor implements ast.Visitor {
             this.table.initDecs(cc.id, newDecs);
 
             // all methods
-            java.util.LinkedList<ast.Ast.Method.T> methods = cc.methods;
+            util.Seq<ast.Ast.Method.T> methods = cc.methods;
             for (ast.Ast.Method.T mthd : methods) {
                 ast.Ast.Method.MethodSingle m = (ast.Ast.Method.MethodSingle) mthd;
                 LinkedList<Dec.T> newArgs = new LinkedList<Dec.T>();
@@ -408,9 +512,30 @@ public class TranslateVisitor implements ast.Visitor {
         ast.Ast.Program.ProgramSingle pp = (ast.Ast.Program.ProgramSingle) p;
         scanMain(pp.mainClass);
         scanClasses(pp.classes);
+        this.alloc = new AllocVisitor();
+        pp.accept(this.alloc);
+
+        // the structure and the vtable of each class, from the table
+        declare(((ast.Ast.MainClass.MainClassSingle) pp.mainClass).id);
+        for (ast.Ast.Class.T c : pp.classes)
+            declare(((ast.Ast.Class.ClassSingle) c).id);
         return;
     }
 
+    private void declare(String c) {
+        ClassBinding cb = this.table.get(c);
+        this.classes.add(new ClassSingle(c, cb.fields));
+        this.vtables.add(new VtableSingle(c, gcMap(cb), cb.methods));
+    }
+
+    // '1' for each field that holds a reference, '0' for each int
+    private static String gcMap(ClassBinding cb) {
+        StringBuilder map = new StringBuilder(cb.fields.size());
+        for (Tuple t : cb.fields)
+            map.append(t.type instanceof Type.Int ? '0' : '1');
+        return map.toString();
+    }
+
     // end of the first pass
     // ////////////////////////////////////////////////////
 
@@ -420,14 +545,63 @@ public class TranslateVisitor implements ast.Visitor {
         // The first pass is to scan the whole program "p", and
         // to collect all information of inheritance.
         scanProgram(p);
+        if (this.out != null)
+            this.out.begin(this.classes, this.vtables);
 
         // do translations
         p.mainClass.accept(this);
         for (ast.Ast.Class.T classs : p.classes) {
             classs.accept(this);
         }
+        if (this.out != null) {
+            this.out.end(this.vtables, this.mainMethod);
+            return;
+        }
         this.program = new ProgramSingle(this.classes, this.vtables,
                 this.methods, this.mainMethod);
         return;
     }
+
+    // Translate and print "p" with "jobs" workers: after the first
+    // pass, a worker translates each class and prints its methods into
+    // a buffer of its own. The buffers go into the output in program
+    // order, so it is the same as that of a serial run.
+    public static void generate(ast.Ast.Program.T p, int jobs) {
+        ast.Ast.Program.ProgramSingle pp = (ast.Ast.Program.ProgramSingle) p;
+        TranslateVisitor trans = new TranslateVisitor();
+        trans.scanProgram(pp);
+
+        List<Callable<TranslateVisitor>> translate = new ArrayList<>();
+        translate.add(() -> {
+            TranslateVisitor w = new TranslateVisitor(trans);
+            pp.mainClass.accept(w);
+            return w;
+        });
+        for (ast.Ast.Class.T c : pp.classes) {
+            translate.add(() -> {
+                TranslateVisitor w = new TranslateVisitor(trans);
+                c.accept(w);
+                return w;
+            });
+        }
+        List<TranslateVisitor> workers = codegen.Jobs.run(translate, jobs);
+
+        List<Callable<util.Emitter>> print = new ArrayList<>();
+        for (TranslateVisitor w : workers) {
+            print.add(() -> {
+                util.Emitter part = new util.Emitter();
+                PrettyPrintVisitor printer = new PrettyPrintVisitor(part);
+                for (Method.T m : w.methods)
+                    m.accept(printer);
+                return part;
+            });
+        }
+        List<util.Emitter> parts = codegen.Jobs.run(print, jobs);
+
+        PrettyPrintVisitor out = new PrettyPrintVisitor();
+        out.begin(trans.classes, trans.vtables);
+        for (util.Emitter part : parts)
+            out.say(part);
+        out.end(trans.vtables, workers.get(0).mainMethod);
+    }
 }
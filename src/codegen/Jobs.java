@@ -0,0 +1,60 @@
+package codegen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+// The per-class work of a code generator on "jobs" workers (see
+// "-codegenjobs"). The results come back in the order of the tasks,
+// so that a backend can put them together as a serial run would. If
+// tasks fail, the first of them fails the run with its own exception,
+// as it would have failed serially.
+public class Jobs {
+    public static <T> List<T> run(List<Callable<T>> tasks, int jobs) {
+        List<T> done = new ArrayList<>();
+        try {
+            if (jobs <= 1 || tasks.size() < 2) {
+                for (Callable<T> t : tasks)
+                    done.add(t.call());
+                return done;
+            }
+            int n = tasks.size();
+            List<T> results = new ArrayList<>(Collections.nCopies(n, (T) null));
+            Throwable[] failed = new Throwable[n];
+            List<Callable<Void>> all = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                int k = i;
+                all.add(() -> {
+                    try {
+                        results.set(k, tasks.get(k).call());
+                    } catch (Throwable e) {
+                        failed[k] = e;
+                    }
+                    return null;
+                });
+            }
+            ForkJoinPool pool = new ForkJoinPool(jobs);
+            try {
+                pool.invokeAll(all);
+            } finally {
+                pool.shutdown();
+            }
+            for (Throwable e : failed) {
+                if (e instanceof RuntimeException)
+                    throw (RuntimeException) e;
+                if (e instanceof Error)
+                    throw (Error) e;
+                if (e != null)
+                    throw new RuntimeException(e);
+            }
+            done = results;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return done;
+    }
+}
@@ -17,7 +17,7 @@ import codegen.bytecode.Ast.Stm.*;
 
 public class PrettyPrintVisitor implements Visitor
 {
-  private java.io.BufferedWriter writer;
+  private util.Emitter out;
 
   public PrettyPrintVisitor()
   {
@@ -25,35 +25,35 @@ public class PrettyPrintVisitor implements Visitor
 
   private void sayln(String s)
   {
-    say(s);
-    try {
-      this.writer.write("\n");
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out.sayln(s);
   }
 
+  // an instruction
   private void isayln(String s)
   {
-    say("    ");
-    say(s);
-    try {
-      this.writer.write("\n");
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out.spaces(4);
+    this.out.sayln(s);
+  }
+
+  // an instruction with an operand
+  private void isayln(String s, int operand)
+  {
+    this.out.spaces(4);
+    this.out.say(s);
+    this.out.say(operand);
+    this.out.say('\n');
+  }
+
+  private void isayln(String s, String operand)
+  {
+    this.out.spaces(4);
+    this.out.say(s);
+    this.out.sayln(operand);
   }
 
   private void say(String s)
   {
-    try {
-      this.writer.write(s);
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out.say(s);
   }
 
   // /////////////////////////////////////////////////////
@@ -61,7 +61,7 @@ public class PrettyPrintVisitor implements Visitor
   @Override
   public void visit(Aload s)
   {
-    this.isayln("aload " + s.index);
+    this.isayln("aload ", s.index);
     return;
   }
 
@@ -75,35 +75,35 @@ public class PrettyPrintVisitor implements Visitor
   @Override
   public void visit(Astore s)
   {
-    this.isayln("astore " + s.index);
+    this.isayln("astore ", s.index);
     return;
   }
 
   @Override
   public void visit(Goto s)
   {
-    this.isayln("goto " + s.l.toString());
+    this.isayln("goto ", s.l.toString());
     return;
   }
 
   @Override
   public void visit(Ificmplt s)
   {
-    this.isayln("if_icmplt " + s.l.toString());
+    this.isayln("if_icmplt ", s.l.toString());
     return;
   }
 
   @Override
   public void visit(Ifne s)
   {
-    this.isayln("ifne " + s.l.toString());
+    this.isayln("ifne ", s.l.toString());
     return;
   }
 
   @Override
   public void visit(Iload s)
   {
-    this.isayln("iload " + s.index);
+    this.isayln("iload ", s.index);
     return;
   }
 
@@ -137,7 +137,7 @@ public class PrettyPrintVisitor implements Visitor
   @Override
   public void visit(Istore s)
   {
-    this.isayln("istore " + s.index);
+    this.isayln("istore ", s.index);
     return;
   }
 
@@ -158,14 +158,14 @@ public class PrettyPrintVisitor implements Visitor
   @Override
   public void visit(Ldc s)
   {
-    this.isayln("ldc " + s.i);
+    this.isayln("ldc ", s.i);
     return;
   }
 
   @Override
   public void visit(New s)
   {
-    this.isayln("new " + s.c);
+    this.isayln("new ", s.c);
     this.isayln("dup");
     this.isayln("invokespecial " + s.c + "/<init>()V");
     return;
@@ -232,13 +232,7 @@ public class PrettyPrintVisitor implements Visitor
   public void visit(ClassSingle c)
   {
     // Every class must go into its own class file.
-    try {
-      this.writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
-          new java.io.FileOutputStream(c.id + ".j")));
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out = new util.Emitter(c.id + ".j");
 
     // header
     this.sayln("; This is automatically generated by the Tiger compiler.");
@@ -272,12 +266,7 @@ public class PrettyPrintVisitor implements Visitor
       m.accept(this);
     }
 
-    try {
-      this.writer.close();
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out.close();
     return;
   }
 
@@ -286,13 +275,7 @@ public class PrettyPrintVisitor implements Visitor
   public void visit(MainClassSingle c)
   {
     // Every class must go into its own class file.
-    try {
-      this.writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
-          new java.io.FileOutputStream(c.id + ".j")));
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out = new util.Emitter(c.id + ".j");
 
     this.sayln("; This is automatically generated by the Tiger compiler.");
     this.sayln("; Do NOT modify!\n");
@@ -307,12 +290,7 @@ public class PrettyPrintVisitor implements Visitor
     this.isayln("return");
     this.sayln(".end method");
 
-    try {
-      this.writer.close();
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out.close();
     return;
   }
 
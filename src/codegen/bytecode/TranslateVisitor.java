@@ -1,7 +1,10 @@
 package codegen.bytecode;
 
+import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import codegen.bytecode.Ast.Class;
 import codegen.bytecode.Ast.Class.ClassSingle;
@@ -20,6 +23,8 @@ import codegen.bytecode.Ast.Stm.*;
 import util.Label;
 
 // Given a Java ast, translate it into Java bytecode.
+//
+// "generate" translates and prints the classes on parallel workers.
 
 public class TranslateVisitor implements ast.Visitor
 {
@@ -33,6 +38,7 @@ public class TranslateVisitor implements ast.Visitor
   private Class.T classs;
   private MainClass.T mainClass;
   public Program.T program;
+  private Label.Block labels; // null if not a worker
 
   public TranslateVisitor()
   {
@@ -45,6 +51,14 @@ public class TranslateVisitor implements ast.Visitor
     this.classs = null;
     this.mainClass = null;
     this.program = null;
+    this.labels = null;
+  }
+
+  // a worker for one class
+  private TranslateVisitor(Label.Block labels)
+  {
+    this();
+    this.labels = labels;
   }
 
   private void emit(Stm.T s)
@@ -52,6 +66,11 @@ public class TranslateVisitor implements ast.Visitor
     this.stms.add(s);
   }
 
+  private Label newLabel()
+  {
+    return this.labels == null ? new Label() : new Label(this.labels);
+  }
+
   // /////////////////////////////////////////////////////
   // expressions
   @Override
@@ -113,7 +132,7 @@ public class TranslateVisitor implements ast.Visitor
   @Override
   public void visit(ast.Ast.Exp.Lt e)
   {
-    Label tl = new Label(), fl = new Label(), el = new Label();
+    Label tl = this.newLabel(), fl = this.newLabel(), el = this.newLabel();
     e.left.accept(this);
     e.right.accept(this);
     emit(new Ificmplt(tl));
@@ -210,7 +229,7 @@ public class TranslateVisitor implements ast.Visitor
   @Override
   public void visit(ast.Ast.Stm.If s)
   {
-    Label tl = new Label(), fl = new Label(), el = new Label();
+    Label tl = this.newLabel(), fl = this.newLabel(), el = this.newLabel();
     s.condition.accept(this);
 
     emit(new Ifne(tl));
@@ -353,4 +372,42 @@ public class TranslateVisitor implements ast.Visitor
     this.program = new ProgramSingle(this.mainClass, newClasses);
     return;
   }
+
+  // Translate and print "p" with "jobs" workers, a class each: once
+  // all are translated, their labels are numbered in program order,
+  // and each class is printed into its own file, as in a serial run.
+  public static void generate(ast.Ast.Program.T p, int jobs)
+  {
+    ast.Ast.Program.ProgramSingle pp = (ast.Ast.Program.ProgramSingle) p;
+    List<Label.Block> blocks = new ArrayList<Label.Block>();
+    List<Callable<Acceptable>> translate = new ArrayList<>();
+    Label.Block mainLabels = new Label.Block();
+    blocks.add(mainLabels);
+    translate.add(() -> {
+      TranslateVisitor w = new TranslateVisitor(mainLabels);
+      pp.mainClass.accept(w);
+      return w.mainClass;
+    });
+    for (ast.Ast.Class.T c : pp.classes) {
+      Label.Block labels = new Label.Block();
+      blocks.add(labels);
+      translate.add(() -> {
+        TranslateVisitor w = new TranslateVisitor(labels);
+        c.accept(w);
+        return w.classs;
+      });
+    }
+    List<Acceptable> classes = codegen.Jobs.run(translate, jobs);
+    for (Label.Block b : blocks)
+      b.place();
+
+    List<Callable<Acceptable>> print = new ArrayList<>();
+    for (Acceptable c : classes) {
+      print.add(() -> {
+        c.accept(new PrettyPrintVisitor());
+        return c;
+      });
+    }
+    codegen.Jobs.run(print, jobs);
+  }
 }
@@ -15,7 +15,7 @@ import codegen.dalvik.Ast.Stm.*;
 
 public class PrettyPrintVisitor implements Visitor
 {
-  private java.io.BufferedWriter writer;
+  private util.Emitter out;
 
   public PrettyPrintVisitor()
   {
@@ -23,35 +23,27 @@ public class PrettyPrintVisitor implements Visitor
 
   private void sayln(String s)
   {
-    say(s);
-    try {
-      this.writer.write("\n");
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out.sayln(s);
   }
 
+  // an instruction
   private void isayln(String s)
   {
-    say("    ");
-    say(s);
-    try {
-      this.writer.write("\n");
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out.spaces(4);
+    this.out.sayln(s);
+  }
+
+  // an instruction with an operand
+  private void isayln(String s, String operand)
+  {
+    this.out.spaces(4);
+    this.out.say(s);
+    this.out.sayln(operand);
   }
 
   private void say(String s)
   {
-    try {
-      this.writer.write(s);
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out.say(s);
   }
 
   // /////////////////////////////////////////////////////
@@ -66,7 +58,7 @@ public class PrettyPrintVisitor implements Visitor
   @Override
   public void visit(Goto32 s)
   {
-    this.isayln("goto/32 " + s.l.toString());
+    this.isayln("goto/32 ", s.l.toString());
     return;
   }
 
@@ -80,7 +72,7 @@ public class PrettyPrintVisitor implements Visitor
   @Override
   public void visit(Ifne s)
   {
-    this.isayln("if-ne " + s.l.toString());
+    this.isayln("if-ne ", s.l.toString());
     return;
   }
 
@@ -226,13 +218,7 @@ public class PrettyPrintVisitor implements Visitor
   public void visit(ClassSingle c)
   {
     // Every class must go into its own class file.
-    try {
-      this.writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
-          new java.io.FileOutputStream(c.id + ".smali")));
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out = new util.Emitter(c.id + ".smali");
 
     // header
     this.sayln("; This is automatically generated by the Tiger compiler.");
@@ -266,12 +252,7 @@ public class PrettyPrintVisitor implements Visitor
       m.accept(this);
     }
 
-    try {
-      this.writer.close();
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out.close();
     return;
   }
 
@@ -280,13 +261,7 @@ public class PrettyPrintVisitor implements Visitor
   public void visit(MainClassSingle c)
   {
     // Every class must go into its own class file.
-    try {
-      this.writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
-          new java.io.FileOutputStream(c.id + ".j")));
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out = new util.Emitter(c.id + ".j");
 
     this.sayln("; This is automatically generated by the Tiger compiler.");
     this.sayln("; Do NOT modify!\n");
@@ -301,12 +276,7 @@ public class PrettyPrintVisitor implements Visitor
     this.isayln("return");
     this.sayln(".end method");
 
-    try {
-      this.writer.close();
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    this.out.close();
     return;
   }
 
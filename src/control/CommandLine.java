@@ -43,7 +43,17 @@ public class CommandLine
   {
     this.args = new util.Flist<Arg<Object>>()
         .list(
-            new Arg<Object>(
+            new Arg<Object>("benchlexer", "<n>",
+                "time n rounds of lexing the given file",
+                Kind.Int, (n) -> {
+                  Control.ConLexer.bench = (Integer) n;
+                  return;
+                }), new Arg<Object>("benchparser", "<n>",
+                "time n rounds of parsing the given file",
+                Kind.Int, (n) -> {
+                  Control.ConParser.bench = (Integer) n;
+                  return;
+                }), new Arg<Object>(
                 "codegen",
                 "{bytecode|C|dalvik|x86}",
                 "which code generator to use",
@@ -64,6 +74,23 @@ public class CommandLine
                     System.exit(1);
                   }
                   return;
+                }), new Arg<Object>("codegenjobs", "<n>",
+                "translate and print the classes with n parallel workers", Kind.Int, (n) -> {
+                  Control.ConCodeGen.jobs = (Integer) n;
+                  return;
+                }), new Arg<Object>("diagnostics", "{text|json}",
+                "print errors as text or as JSON", Kind.String, (ss) -> {
+                  String s = (String) ss;
+                  if (s.equals("text")) {
+                    Control.ConDiag.format = Control.ConDiag.Format.TEXT;
+                  } else if (s.equals("json")) {
+                    Control.ConDiag.format = Control.ConDiag.Format.JSON;
+                  } else {
+                    System.out.println("bad argument: " + s);
+                    output();
+                    System.exit(1);
+                  }
+                  return;
                 }), new Arg<Object>("dump", "{ast}",
                 "dump information about the given ir", Kind.String, (ss) -> {
                   String s = (String) ss;
@@ -88,6 +115,10 @@ public class CommandLine
                     System.exit(1);
                   }
                   return;
+                }), new Arg<Object>("elabjobs", "<n>",
+                "check the method bodies with n parallel workers", Kind.Int, (n) -> {
+                  Control.ConAst.elabJobs = (Integer) n;
+                  return;
                 }), new Arg<Object>("help", null, "show this help information",
                 Kind.Empty, (s) -> {
                   usage();
@@ -97,6 +128,18 @@ public class CommandLine
                 "dump the result of lexical analysis", Kind.Empty, (s) -> {
                   Control.ConLexer.dump = true;
                   return;
+                }), new Arg<Object>("lexjobs", "<n>",
+                "lex large files with n parallel workers", Kind.Int, (n) -> {
+                  Control.ConLexer.jobs = (Integer) n;
+                  return;
+                }), new Arg<Object>("maxerrors", "<n>",
+                "print at most n errors, 0 for all", Kind.Int, (n) -> {
+                  Control.ConDiag.maxErrors = (Integer) n;
+                  return;
+                }), new Arg<Object>("parsejobs", "<n>",
+                "parse the classes with n parallel workers", Kind.Int, (n) -> {
+                  Control.ConParser.jobs = (Integer) n;
+                  return;
                 }), new Arg<Object>("slp", "{args|interp|compile}",
                 "run the SLP interpreter", Kind.String, (ss) -> {
                   String s = (String) ss;
@@ -120,6 +163,11 @@ public class CommandLine
                 "set the name of the output file", Kind.String, (Object s) -> {
                   Control.ConCodeGen.outputName = (String) s;
                   return;
+                }), new Arg<Object>("stream", null,
+                "emit C code method by method, not the whole program at once",
+                Kind.Empty, (s) -> {
+                  Control.ConCodeGen.stream = true;
+                  return;
                 }), new Arg<Object>("testFac", null,
                 "whether or not to test the Tiger compiler on Fac.java",
                 Kind.Empty, (s) -> {
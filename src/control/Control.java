@@ -7,8 +7,37 @@ public class Control
   {
     public static boolean test = false;
     public static boolean dump = false;
+
+    // rounds to benchmark the lexer, 0 for none
+    public static int bench = 0;
+
+    // number of workers lexing a large file in parallel,
+    // 1 for sequential lexing
+    public static int jobs = 1;
+  }
+
+  // the parser
+  public static class ConParser
+  {
+    // rounds to benchmark the parser, 0 for none
+    public static int bench = 0;
+
+    // number of workers parsing the class declarations in
+    // parallel, 1 for sequential parsing
+    public static int jobs = 1;
   }
   
+  // error reporting, see "util.Diagnostics"
+  public static class ConDiag
+  {
+    public enum Format {TEXT, JSON};
+
+    public static Format format = Format.TEXT;
+
+    // errors to keep and print at most, 0 for all of them
+    public static int maxErrors = 0;
+  }
+
   // the straight-line program interpreter
   public static class ConSlp
   {
@@ -28,6 +57,10 @@ public class Control
     // elaborator
     public static boolean elabClassTable = false;
     public static boolean elabMethodTable = false;
+
+    // number of workers checking the method bodies in
+    // parallel, 1 for sequential checking
+    public static int elabJobs = 1;
   }
   
   public static class ConCodeGen
@@ -41,5 +74,11 @@ public class Control
     }
 
     public static Kind_t codegen = Kind_t.C;
+
+    // emit the C code method by method, see "codegen.C.TranslateVisitor"
+    public static boolean stream = false;
+
+    // number of workers translating and printing the classes
+    public static int jobs = 1;
   }
 }
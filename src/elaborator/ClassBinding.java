@@ -1,42 +1,66 @@
 package elaborator;
 
-import java.util.Hashtable;
-
 import ast.Ast.Type;
+import util.SymbolMap;
 
 public class ClassBinding {
     public String extendss; // null for non-existing extends
-    public java.util.Hashtable<String, Type.T> fields;
-    public java.util.Hashtable<String, MethodType> methods;
+    public SymbolMap<Type.T> fields;
+    public SymbolMap<MethodType> methods;
+
+    // Filled in by "ClassTable.flatten": the fields and methods of
+    // this class including all inherited ones, and the interval
+    // [pre, last] of preorder numbers of this class and its subclasses.
+    SymbolMap<Type.T> allFields;
+    SymbolMap<MethodType> allMethods;
+    int pre;
+    int last;
+    int line; // of the declaration, for errors
+    int offset = -1; // into the source, likewise
 
     public ClassBinding(String extendss) {
         this.extendss = extendss;
-        this.fields = new Hashtable<String, Type.T>();
-        this.methods = new Hashtable<String, MethodType>();
+        this.fields = new SymbolMap<Type.T>();
+        this.methods = new SymbolMap<MethodType>();
+    }
+
+    public ClassBinding(String extendss, int line, int offset) {
+        this(extendss);
+        this.line = line;
+        this.offset = offset;
     }
 
     public ClassBinding(String extendss,
-                        java.util.Hashtable<String, Type.T> fields,
-                        java.util.Hashtable<String, MethodType> methods) {
+                        SymbolMap<Type.T> fields,
+                        SymbolMap<MethodType> methods) {
         this.extendss = extendss;
         this.fields = fields;
         this.methods = methods;
     }
 
-    public void put(String xid, Type.T type) {
-        if (this.fields.get(xid) != null) {
-            System.out.println("duplicated class field: " + xid);
-            System.exit(1);
-        }
-        this.fields.put(xid, type);
+    // the type is stored canonical, see "Types". Return false,
+    // keeping the first one, for a duplicated field.
+    public boolean put(String xid, Type.T type) {
+        return this.fields.putIfAbsent(xid, Types.canonical(type)) == null;
+    }
+
+    // return false, keeping the first one, for a duplicated method
+    public boolean put(String mid, MethodType mt) {
+        return this.methods.putIfAbsent(mid, mt) == null;
     }
 
-    public void put(String mid, MethodType mt) {
-        if (this.methods.get(mid) != null) {
-            System.out.println("duplicated class method: " + mid);
-            System.exit(1);
+    // this class's own members over the flattened ones of its
+    // parent (null for none): own fields hide, own methods override.
+    void flatten(ClassBinding parent) {
+        if (parent == null) {
+            this.allFields = new SymbolMap<>(this.fields);
+            this.allMethods = new SymbolMap<>(this.methods);
+        } else {
+            this.allFields = new SymbolMap<>(parent.allFields);
+            this.allFields.putAll(this.fields);
+            this.allMethods = new SymbolMap<>(parent.allMethods);
+            this.allMethods.putAll(this.methods);
         }
-        this.methods.put(mid, mt);
     }
 
     @Override
@@ -1,42 +1,49 @@
 package elaborator;
 
 import ast.Ast.Type;
+import util.Diagnostics;
+import util.SymbolMap;
 import util.Todo;
 
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 
 public class ClassTable {
     // map each class name (a string), to the class bindings.
-    private java.util.Hashtable<String, ClassBinding> table;
+    private SymbolMap<ClassBinding> table;
+    // class names, in the order they were put
+    private ArrayList<String> order;
 
+    // filled in before any method is checked, and only read after
+    // that, so it needs no synchronization even when the methods
+    // are checked in parallel.
     public ClassTable() {
-        this.table = new java.util.Hashtable<String, ClassBinding>();
+        this.table = new SymbolMap<ClassBinding>();
+        this.order = new ArrayList<String>();
     }
 
-    // Duplication is not allowed
-    public void put(String c, ClassBinding cb) {
-        if (this.table.get(c) != null) {
-            System.out.println("duplicated class: " + c);
-            System.exit(1);
-        }
-        this.table.put(c, cb);
+    // Duplication is not allowed: return false, keeping the
+    // first one, for a duplicated class.
+    public boolean put(String c, ClassBinding cb) {
+        if (this.table.putIfAbsent(c, cb) != null)
+            return false;
+        this.order.add(c);
+        return true;
     }
 
     // put a field into this table
-    // Duplication is not allowed
-    public void put(String c, String id, Type.T type) {
+    // Duplication is not allowed, as above.
+    public boolean put(String c, String id, Type.T type) {
         ClassBinding cb = this.table.get(c);
-        cb.put(id, type);
-        return;
+        return cb.put(id, type);
     }
 
     // put a method into this table
-    // Duplication is not allowed.
+    // Duplication is not allowed, as above.
     // Also note that MiniJava does NOT allow overloading.
-    public void put(String c, String id, MethodType type) {
+    public boolean put(String c, String id, MethodType type) {
         ClassBinding cb = this.table.get(c);
-        cb.put(id, type);
-        return;
+        return cb.put(id, type);
     }
 
     // return null for non-existing class
@@ -44,42 +51,125 @@ public class ClassTable {
         return this.table.get(className);
     }
 
-    // get type of some field
-    // return null for non-existing field.
-    public Type.T get(String className, String xid) {
-        ClassBinding cb = this.table.get(className);
-        Type.T type = cb.fields.get(xid);
-        while (type == null) { // search all parent classes until found or fail
-            if (cb.extendss == null)
-                return type;
+    // Flatten the class hierarchy, once all classes are in: give every
+    // class the fields and methods it inherits, so that "get" and "getm"
+    // are a single lookup instead of a walk up the "extends" chain, and
+    // number the classes in preorder, so that "isSubclass" is two
+    // compares.
+    //
+    // Undefined superclasses and cycles are reported to "diag"; the
+    // classes concerned are then taken as if they extended nothing,
+    // so that elaboration can go on and find more errors.
+    public void flatten(Diagnostics diag) {
+        SymbolMap<ArrayList<String>> children = new SymbolMap<>();
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        for (int i = this.order.size() - 1; i >= 0; i--) {
+            String c = this.order.get(i);
+            ClassBinding cb = this.table.get(c);
+            String sup = cb.extendss;
+            if (sup != null && this.table.get(sup) == null) {
+                diag.error(Diagnostics.Phase.ELABORATOR, cb.line, cb.offset,
+                        "class %s extends an undefined class: %s", c, sup);
+                sup = null;
+            }
+            if (sup == null) {
+                stack.push(c);
+                continue;
+            }
+            ArrayList<String> cs = children.get(sup);
+            if (cs == null) {
+                cs = new ArrayList<String>();
+                children.put(sup, cs);
+            }
+            cs.add(c);
+        }
+
+        // preorder, parents before their subclasses
+        ArrayList<ClassBinding> preorder = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            String c = stack.pop();
+            ClassBinding cb = this.table.get(c);
+            cb.flatten(this.parent(cb));
+            cb.pre = cb.last = preorder.size();
+            preorder.add(cb);
+            ArrayList<String> cs = children.get(c);
+            if (cs != null)
+                for (int i = cs.size() - 1; i >= 0; i--)
+                    stack.push(cs.get(i));
+        }
+        // the classes never reached are on, or below, a cycle
+        int reached = preorder.size();
+        if (reached < this.order.size()) {
+            for (String c : this.order) {
+                ClassBinding cb = this.table.get(c);
+                if (cb.allFields != null)
+                    continue;
+                if (this.onCycle(c))
+                    diag.error(Diagnostics.Phase.ELABORATOR, cb.line, cb.offset,
+                            "cyclic inheritance involving class: %s", c);
+                cb.flatten(null);
+                cb.pre = cb.last = preorder.size();
+                preorder.add(cb);
+            }
+        }
+        // a subtree is contiguous in preorder: its last number
+        // is the largest one below it.
+        for (int i = reached - 1; i >= 0; i--) {
+            ClassBinding cb = preorder.get(i);
+            ClassBinding parent = this.parent(cb);
+            if (parent != null)
+                parent.last = Math.max(parent.last, cb.last);
+        }
+    }
 
+    // the binding of the superclass, null for none or an undefined one
+    private ClassBinding parent(ClassBinding cb) {
+        return cb.extendss == null ? null : this.table.get(cb.extendss);
+    }
+
+    // whether going up the "extends" chain from "c" comes back to "c"
+    private boolean onCycle(String c) {
+        ClassBinding cb = this.table.get(c);
+        for (int i = 0; i < this.order.size() && cb.extendss != null; i++) {
+            if (cb.extendss.equals(c))
+                return true;
             cb = this.table.get(cb.extendss);
-            type = cb.fields.get(xid);
+            if (cb == null)
+                return false;
         }
-        return type;
+        return false;
     }
 
-    // get type of some method
-    // return null for non-existing method
+    // get type of some field, inherited ones included
+    // return null for non-existing field, or class.
+    public Type.T get(String className, String xid) {
+        ClassBinding cb = this.table.get(className);
+        return cb == null ? null : cb.allFields.get(xid);
+    }
+
+    // get type of some method, inherited ones included
+    // return null for non-existing method, or class.
     public MethodType getm(String className, String mid) {
         ClassBinding cb = this.table.get(className);
-        MethodType type = cb.methods.get(mid);
-        while (type == null) { // search all parent classes until found or fail
-            if (cb.extendss == null)
-                return type;
+        return cb == null ? null : cb.allMethods.get(mid);
+    }
 
-            cb = this.table.get(cb.extendss);
-            type = cb.methods.get(mid);
-        }
-        return type;
+    // whether class "sub" is "sup" or inherits from it; false when
+    // either is not defined
+    public boolean isSubclass(String sub, String sup) {
+        ClassBinding b = this.table.get(sub);
+        ClassBinding p = this.table.get(sup);
+        if (b == null || p == null)
+            return false;
+        return p.pre <= b.pre && b.pre <= p.last;
     }
 
     public void dump() {
         //new Todo();
         System.out.println("ClassTable");
-        for(Map.Entry<String, ClassBinding> entry : this.table.entrySet()) {
-            System.out.println(entry.getKey());
-            entry.getValue().toString();
+        for (String c : this.table.names()) {
+            System.out.println(c);
+            this.table.get(c).toString();
             System.out.println("\n");
         }
     }
@@ -1,6 +1,5 @@
 package elaborator;
 
-import java.util.LinkedList;
 
 import ast.Ast;
 import ast.Ast.Class;
@@ -38,32 +37,84 @@ import ast.Ast.Stm.While;
 import ast.Ast.Type;
 import ast.Ast.Type.ClassType;
 import control.Control.ConAst;
-
+import util.Diagnostics;
+import util.Seq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Elaboration runs in two steps. Step 1 builds the class table and
+// the method tables, serially. Step 2 checks the bodies: each method
+// gets a checker context of its own (a fresh "ElaboratorVisitor" with
+// its own "currentClass", "currentMethod" and "type"), which only
+// reads the tables, so the contexts can run on parallel workers (see
+// "ConAst.elabJobs"). Each context keeps its errors, and they are
+// merged by line number afterwards, so the output is the same
+// however the contexts were run.
+//
+// Errors, the ones in the tables included, do not stop elaboration:
+// all of them are reported at the end (see "util.Diagnostics").
 public class ElaboratorVisitor implements ast.Visitor {
     public ClassTable classTable; // symbol table for class
     public MethodTable methodTable; // symbol table for each method
     public String currentClass; // the class name being elaborated
     public String currentMethod; // the method name being elaborated
     public Type.T type; // type of the expression being elaborated
-    private Boolean hasError; // whether or not has error
-    private int totalError; // total num of errors
+    private MethodBinding method; // locals of "currentMethod", or null
+    private Diagnostics diag; // errors found by this context
 
     public ElaboratorVisitor() {
+        this(new Diagnostics(control.Control.ConCodeGen.fileName, null));
+    }
+
+    // report errors into "diag", e.g. that of the parser
+    public ElaboratorVisitor(Diagnostics diag) {
         this.classTable = new ClassTable();
         this.methodTable = new MethodTable();
         this.currentClass = null;
         this.currentMethod = null;
         this.type = null;
-        this.hasError = false;
-        this.totalError = 0;
+        this.method = null;
+        this.diag = diag;
+    }
+
+    // a checker context for code in class "c", over the tables of "elab"
+    private ElaboratorVisitor(ElaboratorVisitor elab, String c) {
+        this.classTable = elab.classTable;
+        this.methodTable = elab.methodTable;
+        this.currentClass = c;
+        this.currentMethod = null;
+        this.type = null;
+        this.method = null;
+        this.diag = new Diagnostics(elab.diag.file(), null);
+    }
+
+    // "msg" is a format for "args", only formatted when printed
+    private void error(String msg, int line, int offset, Object... args) {
+        this.diag.error(Diagnostics.Phase.ELABORATOR, line, offset, msg, args);
     }
 
-    private void error(String msg, int line) {
-        this.hasError = true;
-        this.totalError += 1;
-        System.out.print("Error: ");
-        System.out.println(msg + " at line " + line);
-        //System.exit(1);
+    // methods of different classes may share a name
+    private static String methodKey(String c, String m) {
+        return c + "." + m;
+    }
+
+    // type of a formal or local of the current method, null for none
+    private Type.T localType(String id) {
+        return this.method == null ? null : this.method.get(id);
+    }
+
+    // whether a value of type "t" may be used where one of type "want"
+    // is expected: the same type, or an object of a subclass
+    private boolean assignable(Type.T want, Type.T t) {
+        if (want == t)
+            return true;
+        return want instanceof ClassType && t instanceof ClassType
+                && this.classTable.isSubclass(((ClassType) t).id, ((ClassType) want).id);
     }
 
     // /////////////////////////////////////////////////////
@@ -73,13 +124,13 @@ public class ElaboratorVisitor implements ast.Visitor {
         e.left.accept(this);
         Type.T type = this.type;
         e.right.accept(this);
-        if ((!type.toString().equals("@int")) || (!this.type.toString().equals("@int"))) {
-            error("Add: only add by 2 int type data", e.lineNum);
+        if (type != Type.INT || this.type != Type.INT) {
+            error("Add: only add by 2 int type data", e.lineNum, e.offset);
         }
-        if (!this.type.toString().equals(type.toString())) {
-            error("Add: left's type must be same with right's type", e.lineNum);
+        if (this.type != type) {
+            error("Add: left's type must be same with right's type", e.lineNum, e.offset);
         }
-        this.type = new Type.Int();
+        this.type = Type.INT;
         return;
     }
 
@@ -88,13 +139,13 @@ public class ElaboratorVisitor implements ast.Visitor {
         e.left.accept(this);
         Type.T type = this.type;
         e.right.accept(this);
-        if ((!type.toString().equals("@boolean")) || (!this.type.toString().equals("@boolean"))) {
-            error("And: only and by 2 boolean type data", e.lineNum);
+        if (type != Type.BOOLEAN || this.type != Type.BOOLEAN) {
+            error("And: only and by 2 boolean type data", e.lineNum, e.offset);
         }
-        if (!this.type.toString().equals(type.toString())) {
-            error("And: left's type must be same with right's type", e.lineNum);
+        if (this.type != type) {
+            error("And: left's type must be same with right's type", e.lineNum, e.offset);
         }
-        this.type = new Type.Boolean();
+        this.type = Type.BOOLEAN;
         return;
     }
 
@@ -102,10 +153,10 @@ public class ElaboratorVisitor implements ast.Visitor {
     public void visit(ArraySelect e) {
         e.array.accept(this);
         e.index.accept(this);
-        if (!(this.type instanceof Type.Int)) {
-            error("ArraySelect: index must be int", e.lineNum);
+        if (this.type != Type.INT) {
+            error("ArraySelect: index must be int", e.lineNum, e.offset);
         }
-        this.type = new Type.Int();
+        this.type = Type.INT;
         return;
     }
 
@@ -120,52 +171,54 @@ public class ElaboratorVisitor implements ast.Visitor {
             ty = (ClassType) leftty;
             e.type = ty.id;
         } else {
-            error("Call: left exp must be class type", e.exp.lineNum);
-            this.type = new Type.Int(); // whatever
+            error("Call: left exp must be class type", e.exp.lineNum, e.exp.offset);
+            this.type = Type.INT; // whatever
+            return;
+        }
+        if (this.classTable.get(ty.id) == null) {
+            error("Call: class %s is not defined", e.exp.lineNum, e.exp.offset, ty.id);
+            this.type = Type.INT; // whatever
             return;
         }
         MethodType mty = this.classTable.getm(ty.id, e.id);
         if (mty == null) {
-            error("Call: function name cannot be found", e.lineNum);
+            error("Call: function name cannot be found", e.lineNum, e.offset);
             return;
         }
-        java.util.LinkedList<Type.T> argsty = new LinkedList<Type.T>();
-        for (Exp.T a : e.args) {
-            a.accept(this);
+        Type.T[] argsty = new Type.T[e.args.size()];
+        for (int i = 0; i < argsty.length; i++) {
+            e.args.get(i).accept(this);
             if (this.type == null) {
                 this.type = mty.retType;
                 return;
             }
-            argsty.addLast(this.type);
+            argsty[i] = this.type;
         }
         int argsTypeSize = mty.argsType.size();
-        int argstySize = argsty.size();
+        int argstySize = argsty.length;
         if (argsTypeSize != argstySize) {
-            error("Call: num of func's parameters is wrong", e.lineNum);
+            error("Call: num of func's parameters is wrong", e.lineNum, e.offset);
         }
         for (int i = 0; i < (argsTypeSize <= argstySize ? argsTypeSize : argstySize); i++) {
-            Dec.DecSingle dec = (Dec.DecSingle) mty.argsType.get(i);
-            if (dec.type.toString().equals(argsty.get(i).toString()))
-                ;
-            else
-                error("Call: type of func's parameters is wrong", e.lineNum);
+            if (!assignable(mty.argsType.get(i), argsty[i]))
+                error("Call: type of func's parameters is wrong", e.lineNum, e.offset);
         }
         this.type = mty.retType;
-        e.at = argsty;
+        e.at = Seq.of(argsty);
         e.rt = this.type;
         return;
     }
 
     @Override
     public void visit(False e) {
-        this.type = new Type.Boolean();
+        this.type = Type.BOOLEAN;
         return;
     }
 
     @Override
     public void visit(Id e) {
         // first look up the id in method table
-        Type.T type = this.methodTable.get(this.currentMethod, e.id);
+        Type.T type = localType(e.id);
         // if search failed, then s.id must be a class field.
         if (type == null) {
             type = this.classTable.get(this.currentClass, e.id);
@@ -174,7 +227,7 @@ public class ElaboratorVisitor implements ast.Visitor {
             e.isField = true;
         }
         if (type == null)
-            error("'" + e.id + "' was not declared in this scope", e.lineNum);
+            error("'%s' was not declared in this scope", e.lineNum, e.offset, e.id);
         this.type = type;
         // record this type on this node for future use.
         e.type = type;
@@ -184,10 +237,10 @@ public class ElaboratorVisitor implements ast.Visitor {
     @Override
     public void visit(Length e) {
         e.array.accept(this);
-        if (!(this.type instanceof Type.IntArray)) {
-            error("Length: must be array int type", e.lineNum);
+        if (this.type != Type.INT_ARRAY) {
+            error("Length: must be array int type", e.lineNum, e.offset);
         }
-        this.type = new Type.Int();
+        this.type = Type.INT;
         return;
     }
 
@@ -196,41 +249,41 @@ public class ElaboratorVisitor implements ast.Visitor {
         e.left.accept(this);
         Type.T ty = this.type;
         e.right.accept(this);
-        if (!this.type.toString().equals(ty.toString()))
-            error("Lt: left's type must be same with right's type", e.lineNum);
-        this.type = new Type.Boolean();
+        if (this.type != ty)
+            error("Lt: left's type must be same with right's type", e.lineNum, e.offset);
+        this.type = Type.BOOLEAN;
         return;
     }
 
     @Override
     public void visit(NewIntArray e) {
         e.exp.accept(this);
-        if (!(this.type instanceof Type.Int)) {
-            error("new int[e], e must be int", e.lineNum);
+        if (this.type != Type.INT) {
+            error("new int[e], e must be int", e.lineNum, e.offset);
         }
-        this.type = new Type.IntArray();
+        this.type = Type.INT_ARRAY;
         return;
     }
 
     @Override
     public void visit(NewObject e) {
-        this.type = new Type.ClassType(e.id);
+        this.type = Types.classType(e.id);
         return;
     }
 
     @Override
     public void visit(Not e) {
         e.exp.accept(this);
-        if (!(this.type instanceof Type.Boolean)) {
-            error("Not exp must be Boolean", e.lineNum);
+        if (this.type != Type.BOOLEAN) {
+            error("Not exp must be Boolean", e.lineNum, e.offset);
         }
-        this.type = new Type.Boolean();
+        this.type = Type.BOOLEAN;
         return;
     }
 
     @Override
     public void visit(Num e) {
-        this.type = new Type.Int();
+        this.type = Type.INT;
         return;
     }
 
@@ -239,18 +292,18 @@ public class ElaboratorVisitor implements ast.Visitor {
         e.left.accept(this);
         Type.T leftty = this.type;
         e.right.accept(this);
-        if ((!leftty.toString().equals("@int")) || (!this.type.toString().equals("@int"))) {
-            error("SubExp: only sub by 2 int type data", e.lineNum);
+        if (leftty != Type.INT || this.type != Type.INT) {
+            error("SubExp: only sub by 2 int type data", e.lineNum, e.offset);
         }
-        if (!this.type.toString().equals(leftty.toString()))
-            error("SubExp: left's type must be same with right's type", e.lineNum);
-        this.type = new Type.Int();
+        if (this.type != leftty)
+            error("SubExp: left's type must be same with right's type", e.lineNum, e.offset);
+        this.type = Type.INT;
         return;
     }
 
     @Override
     public void visit(This e) {
-        this.type = new Type.ClassType(this.currentClass);
+        this.type = Types.classType(this.currentClass);
         return;
     }
 
@@ -259,18 +312,18 @@ public class ElaboratorVisitor implements ast.Visitor {
         e.left.accept(this);
         Type.T leftty = this.type;
         e.right.accept(this);
-        if ((!leftty.toString().equals("@int")) || (!this.type.toString().equals("@int"))) {
-            error("Times: only times by 2 int type data", e.lineNum);
+        if (leftty != Type.INT || this.type != Type.INT) {
+            error("Times: only times by 2 int type data", e.lineNum, e.offset);
         }
-        if (!this.type.toString().equals(leftty.toString()))
-            error("Times: left's type must be same with right's type", e.lineNum);
-        this.type = new Type.Int();
+        if (this.type != leftty)
+            error("Times: left's type must be same with right's type", e.lineNum, e.offset);
+        this.type = Type.INT;
         return;
     }
 
     @Override
     public void visit(True e) {
-        this.type = new Type.Boolean();
+        this.type = Type.BOOLEAN;
         return;
     }
 
@@ -278,42 +331,42 @@ public class ElaboratorVisitor implements ast.Visitor {
     @Override
     public void visit(Assign s) {
         // first look up the id in method table
-        Type.T type = this.methodTable.get(this.currentMethod, s.id);
+        Type.T type = localType(s.id);
         // if search failed, then s.id must
         if (type == null)
             type = this.classTable.get(this.currentClass, s.id);
         if (type == null) {
-            error("Assign: cannot found left id", s.lineNum);
+            error("Assign: cannot found left id", s.lineNum, s.offset);
             return;
         }
         s.exp.accept(this);
         s.type = type;
-        if(!this.type.toString().equals(type.toString())) {
-            error("Assign: type of left and right is different", s.exp.lineNum);
+        if (!assignable(type, this.type)) {
+            error("Assign: type of left and right is different", s.exp.lineNum, s.exp.offset);
         }
         return;
     }
 
     @Override
     public void visit(AssignArray s) {
-        Type.T type = this.methodTable.get(this.currentMethod, s.id);
+        Type.T type = localType(s.id);
         if (type == null) {
             type = this.classTable.get(this.currentClass, s.id);
         }
         if (type == null) {
-            error("AssignArray: left id cannot be found", s.lineNum);
+            error("AssignArray: left id cannot be found", s.lineNum, s.offset);
             return;
         }
-        if (!(type instanceof Type.IntArray)) {
-            error("AssignArray: left id must be int array type", s.lineNum);
+        if (type != Type.INT_ARRAY) {
+            error("AssignArray: left id must be int array type", s.lineNum, s.offset);
         }
         s.index.accept(this);
-        if (!(this.type instanceof Type.Int)) {
-            error("AssignArray: index must be int", s.index.lineNum);
+        if (this.type != Type.INT) {
+            error("AssignArray: index must be int", s.index.lineNum, s.index.offset);
         }
         s.exp.accept(this);
-        if (!(this.type instanceof Type.Int)) {
-            error("AssignArray: right's type must be int", s.exp.lineNum);
+        if (this.type != Type.INT) {
+            error("AssignArray: right's type must be int", s.exp.lineNum, s.exp.offset);
         }
         return;
     }
@@ -329,8 +382,8 @@ public class ElaboratorVisitor implements ast.Visitor {
     @Override
     public void visit(If s) {
         s.condition.accept(this);
-        if (!this.type.toString().equals("@boolean"))
-            error("If: condition must be boolean", s.lineNum);
+        if (this.type != Type.BOOLEAN)
+            error("If: condition must be boolean", s.lineNum, s.offset);
         s.thenn.accept(this);
         s.elsee.accept(this);
         return;
@@ -339,16 +392,16 @@ public class ElaboratorVisitor implements ast.Visitor {
     @Override
     public void visit(Print s) {
         s.exp.accept(this);
-        if (!this.type.toString().equals("@int"))
-            error("Print: only can print int data", s.lineNum);
+        if (this.type != Type.INT)
+            error("Print: only can print int data", s.lineNum, s.offset);
         return;
     }
 
     @Override
     public void visit(While s) {
         s.condition.accept(this);
-        if (!this.type.toString().equals("@boolean")) {
-            error("While: condition must be boolean", s.lineNum);
+        if (this.type != Type.BOOLEAN) {
+            error("While: condition must be boolean", s.lineNum, s.offset);
         }
         s.body.accept(this);
         return;
@@ -364,7 +417,7 @@ public class ElaboratorVisitor implements ast.Visitor {
     public void visit(Type.ClassType t) {
         ClassBinding cb = this.classTable.get(t.id);
         if (cb == null) {
-            error("Dec: " + t.id + " type isn't exist", t.lineNum);
+            error("Dec: %s type isn't exist", t.lineNum, t.offset, t.id);
         }
         return;
     }
@@ -391,8 +444,7 @@ public class ElaboratorVisitor implements ast.Visitor {
     public void visit(Method.MethodSingle m) {
 
         this.currentMethod = m.id;
-        // construct the method table
-        this.methodTable.put(m.id, m.formals, m.locals);
+        this.method = this.methodTable.get(methodKey(this.currentClass, m.id));
 
         m.retType.accept(this);
 
@@ -404,16 +456,11 @@ public class ElaboratorVisitor implements ast.Visitor {
             dec.accept(this);
         }
 
-        if (ConAst.elabMethodTable) {
-            System.out.print(m.id + ": ");
-            System.out.println(this.methodTable.get(m.id).toString());
-        }
-
         for (Stm.T s : m.stms)
             s.accept(this);
         m.retExp.accept(this);
-        if (!this.type.toString().equals(m.retType.toString())) {
-            error("Function " + m.id + ": return type is wrong", m.lineNum);
+        if (this.type != Types.canonical(m.retType)) {
+            error("Function %s: return type is wrong", m.retExp.lineNum, m.retExp.offset, m.id);
         }
         return;
     }
@@ -451,17 +498,55 @@ public class ElaboratorVisitor implements ast.Visitor {
         this.classTable.put(main.id, new ClassBinding(null));
     }
 
-    // class table for normal classes
-    private void buildClass(ClassSingle c) {
-        this.classTable.put(c.id, new ClassBinding(c.extendss));
+    // class table for normal classes; return false, leaving the
+    // class out, if it is a duplicate.
+    private boolean buildClass(ClassSingle c) {
+        if (!this.classTable.put(c.id, new ClassBinding(c.extendss, c.lineNum, c.offset))) {
+            error("duplicated class: %s", c.lineNum, c.offset, c.id);
+            return false;
+        }
         for (Dec.T dec : c.decs) {
             Dec.DecSingle d = (Dec.DecSingle) dec;
-            this.classTable.put(c.id, d.id, d.type);
+            if (!this.classTable.put(c.id, d.id, d.type))
+                error("duplicated class field: %s", d.lineNum, d.offset, d.id);
+        }
+        for (Method.T method : c.methods) {
+            MethodSingle m = (MethodSingle) method;
+            if (!this.classTable.put(c.id, m.id, new MethodType(m.retType, m.formals)))
+                error("duplicated class method: %s", m.lineNum, m.offset, m.id);
         }
+        return true;
+    }
+
+    // method table for each method of a class, but a duplicated one;
+    // and, for step 2, a task to check each of them.
+    private void buildMethods(ClassSingle c, List<Callable<ElaboratorVisitor>> tasks) {
         for (Method.T method : c.methods) {
             MethodSingle m = (MethodSingle) method;
-            this.classTable.put(c.id, m.id, new MethodType(m.retType, m.formals));
-            this.methodTable.put(m.id, new MethodBinding());
+            String key = methodKey(c.id, m.id);
+            if (this.methodTable.get(key) != null)
+                continue;
+            MethodBinding mb = new MethodBinding();
+            for (Dec.T dec : m.formals) {
+                Dec.DecSingle d = (Dec.DecSingle) dec;
+                if (!mb.put(d.id, d.type))
+                    error("duplicated parameter: %s", d.lineNum, d.offset, d.id);
+            }
+            for (Dec.T dec : m.locals) {
+                Dec.DecSingle d = (Dec.DecSingle) dec;
+                if (!mb.put(d.id, d.type))
+                    error("duplicated variable: %s", d.lineNum, d.offset, d.id);
+            }
+            this.methodTable.put(key, mb);
+            if (ConAst.elabMethodTable) {
+                System.out.print(m.id + ": ");
+                System.out.println(mb.toString());
+            }
+            tasks.add(() -> {
+                ElaboratorVisitor elab = new ElaboratorVisitor(this, c.id);
+                m.accept(elab);
+                return elab;
+            });
         }
     }
 
@@ -475,10 +560,14 @@ public class ElaboratorVisitor implements ast.Visitor {
         // step 1: build a symbol table for class (the class table)
         // a class table is a mapping from class names to class bindings
         // classTable: className -> ClassBinding{extends, fields, methods}
-        buildMainClass((MainClass.MainClassSingle) p.mainClass);
+        MainClass.MainClassSingle main = (MainClass.MainClassSingle) p.mainClass;
+        buildMainClass(main);
+        List<ClassSingle> classes = new ArrayList<>();
         for (Class.T c : p.classes) {
-            buildClass((ClassSingle) c);
+            if (buildClass((ClassSingle) c))
+                classes.add((ClassSingle) c);
         }
+        this.classTable.flatten(this.diag);
 
         // we can double check that the class table is OK!
         if (control.Control.ConAst.elabClassTable) {
@@ -486,17 +575,58 @@ public class ElaboratorVisitor implements ast.Visitor {
         }
 
         // ////////////////////////////////////////////////
-        // step 2: elaborate each class in turn, under the class table
+        // step 2: elaborate the main class, the fields of each class
+        // and each method in a context of its own, under the tables
         // built above.
-        p.mainClass.accept(this);
-        for (Class.T c : p.classes) {
-            c.accept(this);
-        }
-        if (this.hasError) {
-            System.out.println("There are " + this.totalError + " errors.");
-            System.exit(1);
+        List<Callable<ElaboratorVisitor>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            ElaboratorVisitor elab = new ElaboratorVisitor(this, main.id);
+            main.accept(elab);
+            return elab;
+        });
+        for (ClassSingle c : classes) {
+            tasks.add(() -> {
+                ElaboratorVisitor elab = new ElaboratorVisitor(this, c.id);
+                for (Dec.T dec : c.decs) {
+                    dec.accept(elab);
+                }
+                return elab;
+            });
+            buildMethods(c, tasks);
+        }
+
+        for (ElaboratorVisitor elab : run(tasks, ConAst.elabJobs)) {
+            this.diag.addAll(elab.diag);
+        }
+        if (!this.diag.isEmpty()) {
+            this.diag.abort("There are " + this.diag.count() + " errors.");
         } else {
             System.out.println("Type checking successfully!");
         }
     }
+
+    // run the checker contexts, on "jobs" workers if more than 1,
+    // and return them in the order of "tasks".
+    private static List<ElaboratorVisitor> run(List<Callable<ElaboratorVisitor>> tasks, int jobs) {
+        List<ElaboratorVisitor> done = new ArrayList<>();
+        try {
+            if (jobs <= 1 || tasks.size() < 2) {
+                for (Callable<ElaboratorVisitor> t : tasks)
+                    done.add(t.call());
+                return done;
+            }
+            ForkJoinPool pool = new ForkJoinPool(jobs);
+            try {
+                for (Future<ElaboratorVisitor> f : pool.invokeAll(tasks))
+                    done.add(f.get());
+            } finally {
+                pool.shutdown();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return done;
+    }
 }
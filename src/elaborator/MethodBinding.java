@@ -1,41 +1,21 @@
 package elaborator;
 
-import ast.Ast;
-import ast.Ast.Dec;
 import ast.Ast.Type;
-
-import java.util.Hashtable;
-import java.util.LinkedList;
+import util.SymbolMap;
 
 public class MethodBinding {
 
-    private java.util.Hashtable<String, Type.T> fields;
+    private SymbolMap<Type.T> fields;
 
     public MethodBinding() {
-        this.fields = new Hashtable<>();
+        this.fields = new SymbolMap<>();
     }
 
-    // Duplication is not allowed
-    public void put(LinkedList<Dec.T> formals,
-                    LinkedList<Dec.T> locals) {
-        for (Dec.T dec : formals) {
-            Dec.DecSingle decc = (Dec.DecSingle) dec;
-            if (this.fields.get(decc.id) != null) {
-                System.out.println("duplicated parameter: " + decc.id);
-                System.exit(1);
-            }
-            this.fields.put(decc.id, decc.type);
-        }
-
-        for (Dec.T dec : locals) {
-            Dec.DecSingle decc = (Dec.DecSingle) dec;
-            if (this.fields.get(decc.id) != null) {
-                System.out.println("duplicated variable: " + decc.id);
-                System.exit(1);
-            }
-            this.fields.put(decc.id, decc.type);
-        }
-
+    // a parameter or a local variable; the type is stored canonical,
+    // see "Types". Return false, keeping the first one, for a
+    // duplicated name.
+    public boolean put(String id, Type.T type) {
+        return this.fields.putIfAbsent(id, Types.canonical(type)) == null;
     }
 
     public Type.T get(String id) {
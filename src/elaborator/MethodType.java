@@ -1,25 +1,26 @@
 package elaborator;
 
-import java.util.LinkedList;
-
 import ast.Ast.Dec;
 import ast.Ast.Type;
+import util.Seq;
 
 public class MethodType {
     public Type.T retType;
-    public LinkedList<Dec.T> argsType;
+    public Seq<Type.T> argsType; // canonical, see "Types"
 
-    public MethodType(Type.T retType, LinkedList<Dec.T> decs) {
-        this.retType = retType;
-        this.argsType = decs;
+    public MethodType(Type.T retType, Seq<Dec.T> decs) {
+        this.retType = Types.canonical(retType);
+        Type.T[] args = new Type.T[decs.size()];
+        for (int i = 0; i < args.length; i++)
+            args[i] = Types.canonical(((Dec.DecSingle) decs.get(i)).type);
+        this.argsType = Seq.of(args);
     }
 
     @Override
     public String toString() {
         String s = "";
-        for (Dec.T dec : this.argsType) {
-            Dec.DecSingle decc = (Dec.DecSingle) dec;
-            s = decc.type.toString() + "*" + s;
+        for (Type.T type : this.argsType) {
+            s = type.toString() + "*" + s;
         }
         s = s + " -> " + this.retType.toString();
         return s;
@@ -0,0 +1,39 @@
+package elaborator;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import ast.Ast.Type;
+
+// Canonical types: there is exactly one object per type, so the
+// elaborator compares types by identity (==), not by their names.
+// The primitive types are the singletons in "Ast.Type", and class
+// types are interned by class name.
+public class Types {
+    private static final ConcurrentHashMap<String, Type.ClassType> classTypes = new ConcurrentHashMap<>();
+
+    public static Type.ClassType classType(String id) {
+        Type.ClassType t = classTypes.get(id);
+        if (t == null) {
+            Type.ClassType fresh = new Type.ClassType(id);
+            t = classTypes.putIfAbsent(id, fresh);
+            if (t == null)
+                t = fresh;
+        }
+        return t;
+    }
+
+    // the canonical object for the type "t", e.g. a type node
+    // from the parser
+    public static Type.T canonical(Type.T t) {
+        switch (t.getNum()) {
+            case -1:
+                return Type.BOOLEAN;
+            case 0:
+                return Type.INT;
+            case 1:
+                return Type.INT_ARRAY;
+            default:
+                return classType(((Type.ClassType) t).id);
+        }
+    }
+}
@@ -4,202 +4,333 @@ import static control.Control.ConLexer.dump;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import lexer.Token.Kind;
-import util.Todo;
+import util.Diagnostics;
+import util.Intern;
 
+// The whole file is read into "buf" once, and tokens are scanned by
+// offsets into it. The only state between two tokens is the offset and
+// the line number, so the lexer can be restarted at the start of any
+// token it produced before (see "restart" and "TokenStream.relex").
 public class Lexer {
     String fname; // the input file name to be compiled
-    InputStream fstream; // input stream for the above file
 
-    // store keywords in Mini Java
-    private Map<String, Kind> keywords = new HashMap<>();
+    private char[] buf;
+    private int pos; // offset of the next unread char in "buf"
+    private int end; // number of valid chars in "buf"
+    // whether the buffer ran out inside a /* */ comment before the
+    // end of the file: a chunk of it (see "ParallelLexer").
+    boolean openComment;
+
+    // Keywords in Mini Java, recognized by a perfect hash over the
+    // first char, the last char and the length (see "keywordHash");
+    // a hit is then confirmed by comparing the text.
+    private static final String[] keywordText = new String[64];
+    private static final Kind[] keywordKind = new Kind[64];
+
+    static {
+        keyword("boolean", Kind.TOKEN_BOOLEAN);
+        keyword("class", Kind.TOKEN_CLASS);
+        keyword("else", Kind.TOKEN_ELSE);
+        keyword("extends", Kind.TOKEN_EXTENDS);
+        keyword("false", Kind.TOKEN_FALSE);
+        keyword("if", Kind.TOKEN_IF);
+        keyword("int", Kind.TOKEN_INT);
+        keyword("length", Kind.TOKEN_LENGTH);
+        keyword("main", Kind.TOKEN_MAIN);
+        keyword("new", Kind.TOKEN_NEW);
+        keyword("out", Kind.TOKEN_OUT);
+        keyword("println", Kind.TOKEN_PRINTLN);
+        keyword("public", Kind.TOKEN_PUBLIC);
+        keyword("return", Kind.TOKEN_RETURN);
+        keyword("static", Kind.TOKEN_STATIC);
+        keyword("String", Kind.TOKEN_STRING);
+        keyword("System", Kind.TOKEN_SYSTEM);
+        keyword("this", Kind.TOKEN_THIS);
+        keyword("true", Kind.TOKEN_TRUE);
+        keyword("void", Kind.TOKEN_VOID);
+        keyword("while", Kind.TOKEN_WHILE);
+    }
+
+    // collision-free on the 21 keywords above; the constants were
+    // found by a small exhaustive search.
+    private static int keywordHash(char first, char last, int len) {
+        return (first + last * 44 + len) & 63;
+    }
+
+    private static void keyword(String s, Kind kind) {
+        int h = keywordHash(s.charAt(0), s.charAt(s.length() - 1), s.length());
+        if (keywordText[h] != null)
+            new util.Bug();
+        keywordText[h] = s;
+        keywordKind[h] = kind;
+    }
+
+    // return the slot of the keyword spelled by buf[start, start+len),
+    // or -1 if it is not a keyword.
+    private static int keywordSlot(char[] buf, int start, int len) {
+        int h = keywordHash(buf[start], buf[start + len - 1], len);
+        String k = keywordText[h];
+        if (k == null || k.length() != len)
+            return -1;
+        for (int i = 0; i < len; i++)
+            if (k.charAt(i) != buf[start + i])
+                return -1;
+        return h;
+    }
+
+    // identifiers and numbers seen by this lexer
+    private Intern symbols = Intern.local();
+
+    // illegal characters are recorded here and skipped
+    private Diagnostics diag;
 
     // line number
     private int lineNum;
 
-    // next char
-    private int lookahead;
-
     public Lexer(String fname, InputStream fstream) {
         this.fname = fname;
-        this.fstream = fstream;
         this.lineNum = 1;
-        this.lookahead = 0;
-
-        // initialize keywords
-        keywords.put("boolean", Kind.TOKEN_BOOLEAN);
-        keywords.put("class", Kind.TOKEN_CLASS);
-        keywords.put("else", Kind.TOKEN_ELSE);
-        keywords.put("extends", Kind.TOKEN_EXTENDS);
-        keywords.put("false", Kind.TOKEN_FALSE);
-        keywords.put("if", Kind.TOKEN_IF);
-        keywords.put("int", Kind.TOKEN_INT);
-        keywords.put("length", Kind.TOKEN_LENGTH);
-        keywords.put("main", Kind.TOKEN_MAIN);
-        keywords.put("new", Kind.TOKEN_NEW);
-        keywords.put("out", Kind.TOKEN_OUT);
-        keywords.put("println", Kind.TOKEN_PRINTLN);
-        keywords.put("public", Kind.TOKEN_PUBLIC);
-        keywords.put("return", Kind.TOKEN_RETURN);
-        keywords.put("static", Kind.TOKEN_STATIC);
-        keywords.put("String", Kind.TOKEN_STRING);
-        keywords.put("System", Kind.TOKEN_SYSTEM);
-        keywords.put("this", Kind.TOKEN_THIS);
-        keywords.put("true", Kind.TOKEN_TRUE);
-        keywords.put("void", Kind.TOKEN_VOID);
-        keywords.put("while", Kind.TOKEN_WHILE);
-    }
-
-    // When called, return the next token (refer to the code "Token.java")
-    // from the input stream.
-    // Return TOKEN_EOF when reaching the end of the input stream.
-    private Token nextTokenInternal() throws Exception {
-        int c;
-        if (lookahead == 0) {
-            c = this.fstream.read();
-        } else {
-            c = lookahead;
-            //lookahead = this.fstream.read();
+        try {
+            this.buf = readAll(fstream);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        this.end = this.buf.length;
+        this.pos = 0;
+        this.diag = new Diagnostics(fname, this.buf);
+    }
+
+    // lex a source that is already in memory, e.g. in an editor
+    public Lexer(String fname, char[] buf) {
+        this(fname, buf, 0, buf.length);
+    }
+
+    // lex only the chunk buf[start, end) of a shared buffer; offsets
+    // stay absolute, but lines are counted from 1 at "start".
+    Lexer(String fname, char[] buf, int start, int end) {
+        this.fname = fname;
+        this.lineNum = 1;
+        this.buf = buf;
+        this.pos = start;
+        this.end = end;
+        this.diag = new Diagnostics(fname, buf);
+    }
+
+    // read the whole input stream, one char per byte
+    private static char[] readAll(InputStream in) throws IOException {
+        byte[] bytes = new byte[8192];
+        int n = 0;
+        int r;
+        while ((r = in.read(bytes, n, bytes.length - n)) != -1) {
+            n += r;
+            if (n == bytes.length)
+                bytes = Arrays.copyOf(bytes, n * 2);
         }
+        char[] chars = new char[n];
+        for (int i = 0; i < n; i++)
+            chars[i] = (char) (bytes[i] & 0xff);
+        return chars;
+    }
+
+    // ///////////////////////////////////////////////////
+    // scanning
+
+    // where the last scanned token is, and its lexeme if
+    // already known (keywords).
+    int tokenLine;
+    int tokenStart;
+    int tokenLength;
+    String tokenLexeme;
+
+    // Scan the next token over "buf" by offsets, without building a
+    // "Token": its kind is returned, and the rest is left in the
+    // "token*" fields. Return TOKEN_EOF when reaching the end.
+    Kind scan() {
+        Kind kind;
+        while ((kind = this.scanToken()) == null)
+            ;
+        return kind;
+    }
 
-        if (-1 == c)
-            // The value for "lineNum" is now "null",
-            // you should modify this to an appropriate
-            // line number for the "EOF" token.
-            return new Token(Kind.TOKEN_EOF, this.lineNum);
+    // scan one token, or skip an illegal character and return null
+    private Kind scanToken() {
+        char[] buf = this.buf;
+        int end = this.end;
+        int p = this.pos;
 
         // skip all kinds of "blanks" and comments
-        // comments: // or /* */
-        while (' ' == c || '\t' == c || '\r' == c || c == '\n' || c == '/') {
+        while (p < end) {
+            char c = buf[p];
             if (c == '\n') {
                 this.lineNum += 1;
-            }
-            int tmp = c;
-            c = this.fstream.read();
-            // deal with comment //
-            if (tmp == '/' && c == '/') {
-                while(c != '\n') {
-                    c = this.fstream.read();
-                }
-            }
-            // deal with comment /* */
-            if (tmp == '/' && c == '*') {
-                c = this.fstream.read();
-                while(true) {
-                    tmp = c;
-                    c = this.fstream.read();
-                    if (tmp == '*' && c == '/') {
-                        c = this.fstream.read();
-                        break;
+                p++;
+            } else if (c == ' ' || c == '\t' || c == '\r') {
+                p++;
+            } else if (c == '/') {
+                p++;
+                if (p < end && buf[p] == '/') {
+                    while (p < end && buf[p] != '\n')
+                        p++;
+                } else if (p < end && buf[p] == '*') {
+                    int start = p - 1;
+                    int line = this.lineNum;
+                    p++;
+                    while (p < end && !(buf[p] == '*' && p + 1 < end && buf[p + 1] == '/')) {
+                        if (buf[p] == '\n')
+                            this.lineNum += 1;
+                        p++;
                     }
+                    // the end of a chunk may cut a comment, but the
+                    // end of the file may not
+                    if (p >= end && end == buf.length)
+                        this.diag.error(Diagnostics.Phase.LEXER, line, start,
+                                "unterminated comment");
+                    else if (p >= end)
+                        this.openComment = true;
+                    p = Math.min(p + 2, end);
                 }
-            }
+            } else
+                break;
         }
 
-        lookahead = this.fstream.read();
-
-        if (-1 == c)
-            return new Token(Kind.TOKEN_EOF, this.lineNum);
+        this.tokenLine = this.lineNum;
+        this.tokenStart = p;
+        this.tokenLexeme = null;
+        if (p >= end) {
+            this.pos = end;
+            this.tokenLength = 0;
+            return Kind.TOKEN_EOF;
+        }
 
+        char c = buf[p++];
+        Kind kind = null;
         switch (c) {
             case '+':
-                return new Token(Kind.TOKEN_ADD, this.lineNum);
+                kind = Kind.TOKEN_ADD;
+                break;
             case '&':
-                lookahead = this.fstream.read();
-                return new Token(Kind.TOKEN_AND, this.lineNum);
+                if (p < end && buf[p] == '&')
+                    p++;
+                kind = Kind.TOKEN_AND;
+                break;
             case '=':
-                return new Token(Kind.TOKEN_ASSIGN, this.lineNum);
+                kind = Kind.TOKEN_ASSIGN;
+                break;
             case ',':
-                return new Token(Kind.TOKEN_COMMER, this.lineNum);
+                kind = Kind.TOKEN_COMMER;
+                break;
             case '.':
-                return new Token(Kind.TOKEN_DOT, this.lineNum);
+                kind = Kind.TOKEN_DOT;
+                break;
             case '{':
-                return new Token(Kind.TOKEN_LBRACE, this.lineNum);
+                kind = Kind.TOKEN_LBRACE;
+                break;
             case '[':
-                return new Token(Kind.TOKEN_LBRACK, this.lineNum);
+                kind = Kind.TOKEN_LBRACK;
+                break;
             case '(':
-                return new Token(Kind.TOKEN_LPAREN, this.lineNum);
+                kind = Kind.TOKEN_LPAREN;
+                break;
             case '<':
-                return new Token(Kind.TOKEN_LT, this.lineNum);
+                kind = Kind.TOKEN_LT;
+                break;
             case '!':
-                return new Token(Kind.TOKEN_NOT, this.lineNum);
+                kind = Kind.TOKEN_NOT;
+                break;
             case '}':
-                return new Token(Kind.TOKEN_RBRACE, this.lineNum);
+                kind = Kind.TOKEN_RBRACE;
+                break;
             case ']':
-                return new Token(Kind.TOKEN_RBRACK, this.lineNum);
+                kind = Kind.TOKEN_RBRACK;
+                break;
             case ')':
-                return new Token(Kind.TOKEN_RPAREN, this.lineNum);
+                kind = Kind.TOKEN_RPAREN;
+                break;
             case ';':
-                return new Token(Kind.TOKEN_SEMI, this.lineNum);
+                kind = Kind.TOKEN_SEMI;
+                break;
             case '-':
-                return new Token(Kind.TOKEN_SUB, this.lineNum);
+                kind = Kind.TOKEN_SUB;
+                break;
             case '*':
-                return new Token(Kind.TOKEN_TIMES, this.lineNum);
+                kind = Kind.TOKEN_TIMES;
+                break;
             default:
-                // Lab 1, exercise 2: supply missing code to
-                // lex other kinds of tokens.
-                // Hint: think carefully about the basic
-                // data structure and algorithms. The code
-                // is not that much and may be less than 50 lines. If you
-                // find you are writing a lot of code, you
-                // are on the wrong way.
-
-                // c is a letter
-                String str = "";
-                Token relToken = null; // result token
-                if (Character.isLetter(c)) {
-                    str += Character.toString((char) c);
-                    while(Character.isLetter(lookahead) || Character.isDigit(lookahead) || (char) lookahead == '_') {
-                        str += Character.toString((char) lookahead);
-                        lookahead = this.fstream.read();
-                    }
-                    //System.out.println("hhh " + str);
-                    Kind k = keywords.get(str);
-                    if (k != null) {
-                        relToken =  new Token(k, this.lineNum, str);
-                    } else {
-                        relToken =  new Token(Kind.TOKEN_ID, this.lineNum, str);
-                    }
-                } else if (Character.isDigit(c)) {
-                    str = "";
-                    str += Character.toString((char) c);
-                    while(Character.isDigit(lookahead)) {
-                        str += Character.toString((char) lookahead);
-                        lookahead = this.fstream.read();
-                    }
-                    relToken =  new Token(Kind.TOKEN_NUM, this.lineNum, str);
-                }
-                return relToken;
+                break;
+        }
+        if (kind == null) {
+            if (Character.isLetter(c)) {
+                while (p < end && (Character.isLetter(buf[p]) || Character.isDigit(buf[p]) || buf[p] == '_'))
+                    p++;
+                int slot = keywordSlot(buf, this.tokenStart, p - this.tokenStart);
+                if (slot != -1) {
+                    kind = keywordKind[slot];
+                    this.tokenLexeme = keywordText[slot];
+                } else
+                    kind = Kind.TOKEN_ID;
+            } else if (Character.isDigit(c)) {
+                while (p < end && Character.isDigit(buf[p]))
+                    p++;
+                kind = Kind.TOKEN_NUM;
+            } else {
+                this.diag.error(Diagnostics.Phase.LEXER, this.lineNum, this.tokenStart,
+                        "illegal character '%c'", c);
+                this.pos = p;
+                return null;
+            }
         }
+        this.pos = p;
+        this.tokenLength = p - this.tokenStart;
+        return kind;
     }
 
+    // When called, return the next token (refer to the code "Token.java").
+    // Identifiers and numbers are interned straight out of "buf",
+    // so no string is built unless the spelling is new.
     public Token nextToken() {
-        Token t = null;
-
-        try {
-            t = this.nextTokenInternal();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
+        Kind kind = this.scan();
+        String lexeme = this.tokenLexeme;
+        if (kind == Kind.TOKEN_ID || kind == Kind.TOKEN_NUM)
+            lexeme = this.symbols.intern(this.buf, this.tokenStart, this.tokenLength);
+        Token t = new Token(kind, this.tokenLine, lexeme, this.tokenStart, this.tokenLength);
         if (dump)
             System.out.println(t.toString());
         return t;
     }
 
-    public void mark(int n) {
-        this.fstream.mark(n);
+    // resume scanning at "offset", which is on line "line"; "offset"
+    // must not be inside a comment, e.g. the start of an earlier token.
+    public void restart(int offset, int line) {
+        this.pos = offset;
+        this.lineNum = line;
+        this.openComment = false;
     }
 
-    public void reset() {
-        try {
-            this.fstream.reset();
-        } catch (IOException e) {
-            System.out.println("ERROR: Cannot reset inputStream to mark position");
-            e.printStackTrace();
-        }
+    // the offset of the next unread char
+    public int position() {
+        return this.pos;
+    }
+
+    // the source buffer
+    public char[] buffer() {
+        return this.buf;
+    }
+
+    // the errors found so far
+    public Diagnostics diagnostics() {
+        return this.diag;
+    }
+
+    Intern symbols() {
+        return this.symbols;
+    }
+
+    // number of chars left to scan in "buf"
+    int remaining() {
+        return this.end - this.pos;
     }
 }
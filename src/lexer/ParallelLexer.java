@@ -0,0 +1,88 @@
+package lexer;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Lex a large file in parallel: the buffer is cut into chunks just
+// after newlines, each chunk is lexed on its own by a worker, and the
+// per-chunk token streams are stitched back together with their line
+// numbers shifted. The result is the same as lexing sequentially.
+//
+// A cut can not tell whether it lands inside a /* */ comment. That is
+// found out afterwards instead: the lexer of the chunk before it runs
+// out of input inside the comment, and then the chunks the comment
+// spans are lexed again as one.
+public class ParallelLexer {
+    // chunks smaller than this are not worth a task
+    public static final int MIN_CHUNK = 1 << 16;
+
+    public static TokenStream lex(String fname, InputStream fstream, int jobs) {
+        Lexer lexer = new Lexer(fname, fstream);
+        char[] buf = lexer.buffer();
+        int chunks = Math.min(jobs, buf.length / MIN_CHUNK);
+        if (chunks <= 1)
+            return new TokenStream(lexer);
+        return lex(fname, buf, chunks, jobs);
+    }
+
+    // lex "buf" as (at most) "chunks" chunks, on "jobs" workers
+    public static TokenStream lex(String fname, char[] buf, int chunks, int jobs) {
+        int[] bounds = split(buf, chunks);
+        List<Callable<TokenStream>> tasks = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            int start = bounds[i];
+            int end = bounds[i + 1];
+            tasks.add(() -> new TokenStream(new Lexer(fname, buf, start, end), false));
+        }
+
+        List<TokenStream> lexed = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        try {
+            for (Future<TokenStream> f : pool.invokeAll(tasks))
+                lexed.add(f.get());
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+
+        List<TokenStream> parts = new ArrayList<>();
+        int i = 0;
+        while (i < chunks) {
+            TokenStream part = lexed.get(i);
+            int j = i + 1;
+            // a comment runs across the cut: redo the chunks it spans
+            while (part.openComment && j < chunks) {
+                j++;
+                part = new TokenStream(new Lexer(fname, buf, bounds[i], bounds[j]), false);
+            }
+            // errors are rare, and their lines would need the same
+            // shifting as the tokens: lex the file again in one go
+            if (!part.diagnostics().isEmpty())
+                return new TokenStream(new Lexer(fname, buf));
+            parts.add(part);
+            i = j;
+        }
+        return new TokenStream(buf, parts);
+    }
+
+    // chunk i is buf[bounds[i], bounds[i+1]); every cut but the two ends
+    // is just after a newline, so no token spans two chunks.
+    private static int[] split(char[] buf, int chunks) {
+        int[] bounds = new int[chunks + 1];
+        for (int i = 1; i < chunks; i++) {
+            int p = Math.max(bounds[i - 1], (int) ((long) buf.length * i / chunks));
+            while (p < buf.length && buf[p] != '\n')
+                p++;
+            bounds[i] = Math.min(p + 1, buf.length);
+        }
+        bounds[chunks] = buf.length;
+        return bounds;
+    }
+}
@@ -2,30 +2,44 @@ package lexer;
 
 public class Token {
     public Kind kind; // kind of the token
-    public String lexeme; // extra lexeme for this token, if any
-    public Integer lineNum; // on which line of the source file this token appears
+    public String lexeme; // extra lexeme for this token, if any (interned)
+    public int lineNum; // on which line of the source file this token appears
+    // where the token's text starts in the source buffer, and how long
+    // it is; offset is -1 if unknown.
+    public int offset;
+    public int length;
+
     // Some tokens don't come with lexeme but
     // others do.
-    public Token(Kind kind, Integer lineNum) {
+    public Token(Kind kind, int lineNum) {
         this.kind = kind;
         this.lineNum = lineNum;
+        this.offset = -1;
     }
 
-    public Token(Kind kind, Integer lineNum, String lexeme) {
+    public Token(Kind kind, int lineNum, String lexeme) {
         this(kind, lineNum);
         this.lexeme = lexeme;
     }
 
+    public Token(Kind kind, int lineNum, String lexeme, int offset, int length) {
+        this.kind = kind;
+        this.lineNum = lineNum;
+        this.lexeme = lexeme;
+        this.offset = offset;
+        this.length = length;
+    }
+
     @Override
     public String toString() {
         String s;
 
         // to check that the "lineNum" field has been properly set.
-        if (this.lineNum == null)
+        if (this.lineNum <= 0)
             new util.Todo();
 
         s = ": " + ((this.lexeme == null) ? "<NONE>" : this.lexeme) + " : at line "
-                + this.lineNum.toString();
+                + Integer.toString(this.lineNum);
         return this.kind.toString() + s;
     }
 
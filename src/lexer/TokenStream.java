@@ -0,0 +1,301 @@
+package lexer;
+
+import static control.Control.ConLexer.dump;
+
+import java.util.Arrays;
+import java.util.List;
+
+import lexer.Token.Kind;
+import util.Diagnostics;
+import util.Intern;
+
+// The whole token sequence of a file, lexed up front and stored as
+// parallel primitive arrays (struct of arrays) rather than as one
+// "Token" object per token, plus a cursor for the parser.
+//
+// Lexemes are not stored: they are interned out of the source buffer
+// on demand, which costs no allocation once the spelling has been seen.
+public class TokenStream {
+    private static final Kind[] kindOf = Kind.values();
+
+    private char[] buf; // the source
+    private Intern symbols;
+    private Diagnostics diag; // lexical errors, and later syntax errors
+
+    private byte[] kinds; // kind ordinal of each token
+    private int[] lines;
+    private int[] starts; // offset into "buf"
+    private int[] lengths;
+    private int size;
+
+    private int pos; // the cursor
+
+    // see "Lexer.openComment"
+    boolean openComment;
+
+    // lex the whole file, up to and including the EOF token.
+    public TokenStream(Lexer lexer) {
+        this(lexer, dump);
+    }
+
+    TokenStream(Lexer lexer, boolean dumpTokens) {
+        // a rough guess, about one token every 6 chars
+        this(lexer.buffer(), lexer.symbols(), lexer.remaining() / 6);
+
+        Kind kind;
+        do {
+            kind = lexer.scan();
+            this.add(kind, lexer.tokenLine, lexer.tokenStart, lexer.tokenLength);
+            if (dumpTokens)
+                System.out.println(this.token(this.size - 1).toString());
+        } while (kind != Kind.TOKEN_EOF);
+        this.openComment = lexer.openComment;
+        this.diag = lexer.diagnostics();
+        this.pos = 0;
+    }
+
+    // stitch the streams of consecutive chunks of "buf" together:
+    // drop all but the last EOF, and shift each chunk's lines by the
+    // number of lines before it. The chunks have no lexical errors
+    // (see "ParallelLexer").
+    TokenStream(char[] buf, List<TokenStream> parts) {
+        this(buf, Intern.local(), 1 + parts.stream().mapToInt(part -> part.size - 1).sum());
+        this.diag = new Diagnostics(parts.get(0).diag.file(), buf);
+
+        int base = 0;
+        for (int p = 0; p < parts.size(); p++) {
+            TokenStream part = parts.get(p);
+            int n = (p == parts.size() - 1) ? part.size : part.size - 1;
+            System.arraycopy(part.kinds, 0, this.kinds, this.size, n);
+            System.arraycopy(part.starts, 0, this.starts, this.size, n);
+            System.arraycopy(part.lengths, 0, this.lengths, this.size, n);
+            for (int i = 0; i < n; i++)
+                this.lines[this.size + i] = part.lines[i] + base;
+            this.size += n;
+            // the EOF of a chunk is on its last line
+            base += part.lines[part.size - 1] - 1;
+        }
+        if (dump)
+            for (int i = 0; i < this.size; i++)
+                System.out.println(this.token(i).toString());
+        this.pos = 0;
+    }
+
+    // an empty stream over "buf", with room for "cap" tokens
+    private TokenStream(char[] buf, Intern symbols, int cap) {
+        cap = Math.max(16, cap);
+        this.buf = buf;
+        this.symbols = symbols;
+        this.kinds = new byte[cap];
+        this.lines = new int[cap];
+        this.starts = new int[cap];
+        this.lengths = new int[cap];
+        this.size = 0;
+        this.pos = 0;
+    }
+
+    private void add(Kind kind, int line, int start, int length) {
+        if (this.size == this.kinds.length)
+            this.grow(this.size * 2);
+        this.kinds[this.size] = (byte) kind.ordinal();
+        this.lines[this.size] = line;
+        this.starts[this.size] = start;
+        this.lengths[this.size] = length;
+        this.size++;
+    }
+
+    private void grow(int cap) {
+        this.kinds = Arrays.copyOf(this.kinds, cap);
+        this.lines = Arrays.copyOf(this.lines, cap);
+        this.starts = Arrays.copyOf(this.starts, cap);
+        this.lengths = Arrays.copyOf(this.lengths, cap);
+    }
+
+    // /////////////////////////////////////////////
+    // incremental re-lexing
+
+    // The tokens of "newBuf", which is the old source with the chars
+    // [editStart, oldEnd) replaced by newBuf[editStart, newEnd).
+    // Tokens before the edit are kept, lexing resumes at the last of
+    // them (the edit may extend it), and stops as soon as a new token
+    // past the edit lines up with an old one: everything from there on
+    // is the same text, so the old tokens are reused, shifted by the
+    // change in offsets and lines.
+    //
+    // Illegal characters leave no token behind, so if the old source
+    // had any, the tokens cannot tell where: the new source is then
+    // lexed from scratch.
+    public TokenStream relex(String fname, char[] newBuf, int editStart, int oldEnd, int newEnd) {
+        if (!this.diag.isEmpty())
+            return new TokenStream(new Lexer(fname, newBuf), false);
+        int delta = newEnd - oldEnd;
+
+        // the first token that reaches the edit
+        int lo = 0;
+        int hi = this.size - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.starts[mid] + this.lengths[mid] < editStart)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        int first = lo;
+        int from = Math.max(0, first - 1);
+
+        TokenStream ts = new TokenStream(newBuf, this.symbols, this.size + Math.max(0, delta) / 6);
+        System.arraycopy(this.kinds, 0, ts.kinds, 0, from);
+        System.arraycopy(this.lines, 0, ts.lines, 0, from);
+        System.arraycopy(this.starts, 0, ts.starts, 0, from);
+        System.arraycopy(this.lengths, 0, ts.lengths, 0, from);
+        ts.size = from;
+
+        Lexer lexer = new Lexer(fname, newBuf, 0, newBuf.length);
+        ts.diag = lexer.diagnostics();
+        if (from < first)
+            lexer.restart(this.starts[from], this.lines[from]);
+
+        int old = first;
+        Kind kind;
+        do {
+            kind = lexer.scan();
+            int start = lexer.tokenStart;
+            if (start >= newEnd) {
+                while (old < this.size && this.starts[old] < start - delta)
+                    old++;
+                if (old < this.size && this.starts[old] == start - delta
+                        && this.lengths[old] == lexer.tokenLength
+                        && this.kinds[old] == kind.ordinal()) {
+                    int lineDelta = lexer.tokenLine - this.lines[old];
+                    int n = this.size - old;
+                    if (ts.size + n > ts.kinds.length)
+                        ts.grow(ts.size + n);
+                    System.arraycopy(this.kinds, old, ts.kinds, ts.size, n);
+                    for (int i = 0; i < n; i++) {
+                        ts.lines[ts.size + i] = this.lines[old + i] + lineDelta;
+                        ts.starts[ts.size + i] = this.starts[old + i] + delta;
+                    }
+                    System.arraycopy(this.lengths, old, ts.lengths, ts.size, n);
+                    ts.size += n;
+                    return ts;
+                }
+            }
+            ts.add(kind, lexer.tokenLine, start, lexer.tokenLength);
+        } while (kind != Kind.TOKEN_EOF);
+        return ts;
+    }
+
+    // The tokens [from, to) as a stream of their own, ended by an EOF
+    // where token "to" starts; lines and offsets are kept. Slices may
+    // be parsed on other threads, so each gets its own front table for
+    // interning lexemes.
+    public TokenStream slice(int from, int to) {
+        TokenStream ts = new TokenStream(this.buf, Intern.local(), to - from + 1);
+        ts.diag = new Diagnostics(this.diag.file(), this.buf);
+        System.arraycopy(this.kinds, from, ts.kinds, 0, to - from);
+        System.arraycopy(this.lines, from, ts.lines, 0, to - from);
+        System.arraycopy(this.starts, from, ts.starts, 0, to - from);
+        System.arraycopy(this.lengths, from, ts.lengths, 0, to - from);
+        ts.size = to - from;
+        ts.add(Kind.TOKEN_EOF, this.lines[to], this.starts[to], 0);
+        return ts;
+    }
+
+    // /////////////////////////////////////////////
+    // random access
+
+    // the errors found in this file so far
+    public Diagnostics diagnostics() {
+        return this.diag;
+    }
+
+    // number of tokens, including the final EOF
+    public int size() {
+        return this.size;
+    }
+
+    public Kind kind(int i) {
+        return kindOf[this.kinds[i]];
+    }
+
+    public int line(int i) {
+        return this.lines[i];
+    }
+
+    public int start(int i) {
+        return this.starts[i];
+    }
+
+    public int length(int i) {
+        return this.lengths[i];
+    }
+
+    // the interned lexeme of identifiers, numbers and keywords,
+    // null for the other tokens.
+    public String lexeme(int i) {
+        int len = this.lengths[i];
+        if (len == 0 || !Character.isLetterOrDigit(this.buf[this.starts[i]]))
+            return null;
+        return this.symbols.intern(this.buf, this.starts[i], len);
+    }
+
+    // materialize a single token, e.g. for diagnostics
+    public Token token(int i) {
+        return new Token(this.kind(i), this.lines[i], this.lexeme(i), this.starts[i], this.lengths[i]);
+    }
+
+    // whether the two streams hold exactly the same tokens
+    public boolean sameTokens(TokenStream other) {
+        if (this.size != other.size)
+            return false;
+        for (int i = 0; i < this.size; i++)
+            if (this.kinds[i] != other.kinds[i] || this.lines[i] != other.lines[i]
+                    || this.starts[i] != other.starts[i] || this.lengths[i] != other.lengths[i])
+                return false;
+        return true;
+    }
+
+    // /////////////////////////////////////////////
+    // the cursor
+
+    public Kind kind() {
+        return kindOf[this.kinds[this.pos]];
+    }
+
+    // the kind of the k-th token after the cursor, in O(1);
+    // EOF past the end.
+    public Kind peek(int k) {
+        int i = this.pos + k;
+        return (i < this.size) ? kindOf[this.kinds[i]] : Kind.TOKEN_EOF;
+    }
+
+    public int line() {
+        return this.lines[this.pos];
+    }
+
+    public int start() {
+        return this.starts[this.pos];
+    }
+
+    public String lexeme() {
+        return this.lexeme(this.pos);
+    }
+
+    public Token token() {
+        return this.token(this.pos);
+    }
+
+    // move to the next token; the cursor stays on the final EOF.
+    public void advance() {
+        if (this.pos < this.size - 1)
+            this.pos++;
+    }
+
+    public int position() {
+        return this.pos;
+    }
+
+    public void seek(int pos) {
+        this.pos = pos;
+    }
+}
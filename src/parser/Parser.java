@@ -2,29 +2,50 @@ package parser;
 
 import ast.Ast;
 import ast.Visitor;
+import control.Control.ConLexer;
+import control.Control.ConParser;
 import lexer.Lexer;
-import lexer.Token;
+import lexer.ParallelLexer;
 import lexer.Token.Kind;
+import lexer.TokenStream;
+
+import util.Diagnostics;
+import util.Seq;
 
 import javax.sound.sampled.Line;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Parser {
-    Lexer lexer;
-    Token current;
-    boolean rollback;
-    Kind rollbackKind;
-    String rollbackLexeme;
-    int rollbackLineNum;
+    // the whole file is lexed up front, the parser then walks
+    // the tokens with a cursor and arbitrary lookahead.
+    TokenStream tokens;
+
+    // Every list is built on this one scratch stack: a parsing method
+    // pushes its elements above the mark it started at (the nested
+    // lists it parses in between have been popped again by then), and
+    // finally copies them out into an exactly-sized "Seq". So lists
+    // cost no growing and no per-element nodes.
+    private Object[] stack = new Object[64];
+    private int sp = 0;
 
     public Parser(String fname, java.io.InputStream fstream) {
-        lexer = new Lexer(fname, fstream);
-//        fstream.mark(1);
-        //System.out.println(fstream.markSupported() ? "TTTT" : "FFFF");
-        current = lexer.nextToken();
-        rollback = false;
-        rollbackLexeme = null;
-        rollbackLineNum = 0;
+        if (ConLexer.jobs > 1)
+            tokens = ParallelLexer.lex(fname, fstream, ConLexer.jobs);
+        else
+            tokens = new TokenStream(new Lexer(fname, fstream));
+        diag = tokens.diagnostics();
+    }
+
+    // parse tokens that are already lexed, from the cursor on
+    public Parser(TokenStream tokens) {
+        this.tokens = tokens;
+        this.diag = tokens.diagnostics();
     }
 
     // /////////////////////////////////////////////
@@ -32,46 +53,153 @@ public class Parser {
     // and the parser.
 
     private void advance() {
-        current = lexer.nextToken();
+        tokens.advance();
+    }
+
+    // Syntax errors do not abort: each one is recorded here, next to
+    // the lexical errors, then the parser unwinds (see "Panic") to the
+    // nearest construct that can resynchronize, skips to one of the
+    // tokens ";", "}", "class" or "public", and goes on. All errors are
+    // reported by "parse()".
+    private Diagnostics diag;
+    // where the last resynchronization stopped: an error right there is
+    // only a consequence of the one before, so it is not reported again.
+    private int syncPos = -1;
+
+    // thrown after a syntax error has been recorded
+    @SuppressWarnings("serial")
+    private static class Panic extends RuntimeException {
+        Panic() {
+            super(null, null, false, false);
+        }
     }
 
     private void eatToken(Kind kind) {
-        if (kind == current.kind)
+        if (kind == tokens.kind())
             advance();
-        else {
-            System.out.println("Expects: " + kind.toString());
-            System.out.println("But got: " + current.kind.toString() + " " + current.lexeme);
-            System.out.println("At line " + current.lineNum);
-            System.exit(1);
+        else
+            error("expects %s", kind);
+    }
+
+    private Panic error(String what) {
+        return error("%s", what);
+    }
+
+    // "what" is the format of what was expected
+    private Panic error(String what, Object arg) {
+        int i = tokens.position();
+        if (i != syncPos) {
+            String lexeme = tokens.lexeme();
+            diag.error(Diagnostics.Phase.PARSER, tokens.line(), tokens.start(i),
+                    what + ", but got %s%s", arg, tokens.kind(), lexeme == null ? "" : " " + lexeme);
+            syncPos = i;
         }
+        throw new Panic();
+    }
+
+    // skip to the next token in "kinds" (or EOF)
+    private void skipTo(Kind... kinds) {
+        for (; tokens.kind() != Kind.TOKEN_EOF; advance())
+            for (Kind k : kinds)
+                if (tokens.kind() == k) {
+                    syncPos = tokens.position();
+                    return;
+                }
+        syncPos = tokens.position();
+    }
+
+    // the lexical and syntax errors found so far
+    public Diagnostics diagnostics() {
+        return diag;
+    }
+
+    private void push(Object x) {
+        if (sp == stack.length)
+            stack = Arrays.copyOf(stack, sp * 2);
+        stack[sp++] = x;
+    }
+
+    // drop what a parse that panicked left above "mark"
+    private void unwind(int mark) {
+        Arrays.fill(stack, mark, sp, null);
+        sp = mark;
+    }
+
+    // pop everything above "mark" into a list
+    private <X> Seq<X> popSeq(int mark) {
+        Seq<X> list = Seq.copyOf(stack, mark, sp);
+        Arrays.fill(stack, mark, sp, null);
+        sp = mark;
+        return list;
+    }
+
+    // "node", which starts at "start" in the source; the elaborator
+    // reports its errors there.
+    private static Ast.Type.T at(int start, Ast.Type.T node) {
+        node.offset = start;
+        return node;
     }
 
-    private void error() {
-        System.out.println("Syntax error: compilation aborting...");
-        System.out.println("Current Token: " + current.toString());
-        System.exit(1);
-        return;
+    private static Ast.Dec.T at(int start, Ast.Dec.T node) {
+        node.offset = start;
+        return node;
+    }
+
+    private static Ast.Exp.T at(int start, Ast.Exp.T node) {
+        node.offset = start;
+        return node;
+    }
+
+    private static Ast.Stm.T at(int start, Ast.Stm.T node) {
+        node.offset = start;
+        return node;
+    }
+
+    private static Ast.Method.T at(int start, Ast.Method.T node) {
+        node.offset = start;
+        return node;
+    }
+
+    private static Ast.Class.T at(int start, Ast.Class.T node) {
+        node.offset = start;
+        return node;
     }
 
     // ////////////////////////////////////////////////////////////
     // below are method for parsing.
 
-    // A bunch of parsing methods to parse expressions. The messy
-    // parts are to deal with precedence and associativity.
+    // Expressions are parsed by precedence climbing over a table of
+    // binding powers, not by one method per precedence level: every
+    // operand costs the same three calls (parseExp, parseUnaryExp,
+    // parseAtomExp), and a run of operators of one level is a loop.
+    //
+    // The binary operators, loosest first, all left associative:
+    //   &&  <  + -  *
+    // then the prefix "!", and the postfix ".id(...)", "[...]" and
+    // ".length".
+    private static final int[] bindingPower = new int[Kind.values().length];
+
+    static {
+        bindingPower[Kind.TOKEN_AND.ordinal()] = 1;
+        bindingPower[Kind.TOKEN_LT.ordinal()] = 2;
+        bindingPower[Kind.TOKEN_ADD.ordinal()] = 3;
+        bindingPower[Kind.TOKEN_SUB.ordinal()] = 3;
+        bindingPower[Kind.TOKEN_TIMES.ordinal()] = 4;
+    }
 
     // ExpList -> Exp ExpRest*
     // ->
     // ExpRest -> , Exp
-    private LinkedList<Ast.Exp.T> parseExpList() {
-        LinkedList<Ast.Exp.T> expList = new LinkedList<>();
-        if (current.kind == Kind.TOKEN_RPAREN)
-            return expList;
-        expList.add(parseExp());
-        while (current.kind == Kind.TOKEN_COMMER) {
+    private Seq<Ast.Exp.T> parseExpList() {
+        if (tokens.kind() == Kind.TOKEN_RPAREN)
+            return Seq.empty();
+        int mark = sp;
+        push(parseExp());
+        while (tokens.kind() == Kind.TOKEN_COMMER) {
             advance();
-            expList.add(parseExp());
+            push(parseExp());
         }
-        return expList;
+        return popSeq(mark);
     }
 
     // AtomExp -> (exp)
@@ -85,165 +213,149 @@ public class Parser {
     private Ast.Exp.T parseAtomExp() {
         String id;
         int line;
-        switch (current.kind) {
+        int start = tokens.start();
+        switch (tokens.kind()) {
             case TOKEN_LPAREN:
                 advance();
                 Ast.Exp.T e = parseExp();
                 eatToken(Kind.TOKEN_RPAREN);
                 return e;
             case TOKEN_NUM:
-                line = current.lineNum;
-                int num = Integer.parseInt(current.lexeme);
+                line = tokens.line();
+                int num = Integer.parseInt(tokens.lexeme());
                 advance();
-                return new Ast.Exp.Num(num, line);
+                return at(start, new Ast.Exp.Num(num, line));
             case TOKEN_TRUE:
-                line = current.lineNum;
+                line = tokens.line();
                 advance();
-                return new Ast.Exp.True(line);
+                return at(start, new Ast.Exp.True(line));
             case TOKEN_FALSE:
-                line = current.lineNum;
+                line = tokens.line();
                 advance();
-                return new Ast.Exp.False(line);
+                return at(start, new Ast.Exp.False(line));
             case TOKEN_THIS:
-                line = current.lineNum;
+                line = tokens.line();
                 advance();
-                return new Ast.Exp.This(line);
+                return at(start, new Ast.Exp.This(line));
             case TOKEN_ID:
-                id = current.lexeme;
-                line = current.lineNum;
+                id = tokens.lexeme();
+                line = tokens.line();
                 advance();
-                return new Ast.Exp.Id(id, line);
+                return at(start, new Ast.Exp.Id(id, line));
             case TOKEN_NEW: {
                 advance();
-                switch (current.kind) {
+                switch (tokens.kind()) {
                     case TOKEN_INT:
                         advance();
                         eatToken(Kind.TOKEN_LBRACK);
-                        line = current.lineNum;
+                        line = tokens.line();
                         Ast.Exp.T ee = parseExp();
                         eatToken(Kind.TOKEN_RBRACK);
-                        return new Ast.Exp.NewIntArray(ee, line);
+                        return at(start, new Ast.Exp.NewIntArray(ee, line));
                     case TOKEN_ID:
-                        id = current.lexeme;
-                        line = current.lineNum;
+                        id = tokens.lexeme();
+                        line = tokens.line();
                         advance();
                         eatToken(Kind.TOKEN_LPAREN);
                         eatToken(Kind.TOKEN_RPAREN);
-                        return new Ast.Exp.NewObject(id, line);
+                        return at(start, new Ast.Exp.NewObject(id, line));
                     default:
-                        System.out.println("Func: parseAtomExp 2");
-                        error();
-                        return null;
+                        throw error("expects int or a class name after new");
                 }
             }
             default:
-                System.out.println("Function: parseAtomExp 1");
-                error();
-                return null;
+                throw error("expects an expression");
         }
     }
 
-    // NotExp -> AtomExp
-    // -> AtomExp .id (expList)
-    // -> AtomExp [exp]
-    // -> AtomExp .length
-    private Ast.Exp.T parseNotExp() {
-        int line = 0;
-        line = current.lineNum;
-        Ast.Exp.T atomExp = parseAtomExp();
-        while (current.kind == Kind.TOKEN_DOT || current.kind == Kind.TOKEN_LBRACK) {
-            if (current.kind == Kind.TOKEN_DOT) {
+    // UnaryExp -> ! UnaryExp
+    // -> AtomExp PostfixExp*
+    // PostfixExp -> .id (expList)
+    // -> [exp]
+    // -> .length
+    private Ast.Exp.T parseUnaryExp() {
+        // the "!"s are only skipped here, and wrapped around the
+        // operand once it is parsed; their lines stay in the tokens.
+        int firstNot = tokens.position();
+        while (tokens.kind() == Kind.TOKEN_NOT)
+            advance();
+        int lastNot = tokens.position();
+
+        int line = tokens.line();
+        int start = tokens.start();
+        Ast.Exp.T exp = parseAtomExp();
+        for (;;) {
+            if (tokens.kind() == Kind.TOKEN_DOT) {
                 advance();
-                if (current.kind == Kind.TOKEN_LENGTH) {
+                if (tokens.kind() == Kind.TOKEN_LENGTH) {
                     advance();
-                    return new Ast.Exp.Length(atomExp, line);
+                    exp = at(start, new Ast.Exp.Length(exp, line));
+                    continue;
                 }
-                String id = current.lexeme;
-                line = current.lineNum;
+                String id = tokens.lexeme();
+                line = tokens.line();
+                start = tokens.start();
                 eatToken(Kind.TOKEN_ID);
                 eatToken(Kind.TOKEN_LPAREN);
-                LinkedList<Ast.Exp.T> args = parseExpList();
+                Seq<Ast.Exp.T> args = parseExpList();
                 eatToken(Kind.TOKEN_RPAREN);
-                return new Ast.Exp.Call(atomExp, id, args, line);
-            } else {
+                exp = at(start, new Ast.Exp.Call(exp, id, args, line));
+            } else if (tokens.kind() == Kind.TOKEN_LBRACK) {
                 advance();
-                line = current.lineNum;
+                line = tokens.line();
+                start = tokens.start();
                 Ast.Exp.T index = parseExp();
                 eatToken(Kind.TOKEN_RBRACK);
-                return new Ast.Exp.ArraySelect(atomExp, index, line);
-            }
+                exp = at(start, new Ast.Exp.ArraySelect(exp, index, line));
+            } else
+                break;
         }
-        return atomExp;
+
+        for (int i = lastNot - 1; i >= firstNot; i--)
+            exp = at(tokens.start(i), new Ast.Exp.Not(exp, tokens.line(i)));
+        return exp;
     }
 
-    // TimesExp -> ! TimesExp
-    // -> NotExp
-    private Ast.Exp.T parseTimesExp() {
-        while (current.kind == Kind.TOKEN_NOT) {
-            int line = current.lineNum;
-            advance();
-            return new Ast.Exp.Not(parseTimesExp(), line);
-        }
-        return parseNotExp();
+    // Exp -> UnaryExp (BinOp UnaryExp)*
+    private Ast.Exp.T parseExp() {
+        return parseExp(1);
     }
 
-    // AddSubExp -> TimesExp * TimesExp
-    // -> TimesExp
-    private Ast.Exp.T parseAddSubExp() {
-        Ast.Exp.T left = parseTimesExp();
-        while (current.kind == Kind.TOKEN_TIMES) {
-            int line = current.lineNum;
+    // an expression whose operators all bind at least as tight
+    // as "minPower"
+    private Ast.Exp.T parseExp(int minPower) {
+        Ast.Exp.T left = parseUnaryExp();
+        for (;;) {
+            Kind op = tokens.kind();
+            int power = bindingPower[op.ordinal()];
+            if (power < minPower)
+                return left;
+            int line = tokens.line();
+            int start = tokens.start();
             advance();
-            Ast.Exp.T right = parseTimesExp();
-            return new Ast.Exp.Times(left, right, line);
+            // left associative: the right operand takes only
+            // operators binding tighter than this one.
+            Ast.Exp.T right = parseExp(power + 1);
+            left = at(start, binary(op, left, right, line));
         }
-        return left;
     }
 
-    // LtExp -> AddSubExp + AddSubExp
-    // -> AddSubExp - AddSubExp
-    // -> AddSubExp
-    private Ast.Exp.T parseLtExp() {
-        Ast.Exp.T left = parseAddSubExp();
-        while (current.kind == Kind.TOKEN_ADD || current.kind == Kind.TOKEN_SUB) {
-            int line = current.lineNum;
-            if (current.kind == Kind.TOKEN_ADD) {
-                advance();
-                Ast.Exp.T right = parseAddSubExp();
+    private static Ast.Exp.T binary(Kind op, Ast.Exp.T left, Ast.Exp.T right, int line) {
+        switch (op) {
+            case TOKEN_AND:
+                return new Ast.Exp.And(left, right, line);
+            case TOKEN_LT:
+                return new Ast.Exp.Lt(left, right, line);
+            case TOKEN_ADD:
                 return new Ast.Exp.Add(left, right, line);
-            } else {
-                advance();
-                Ast.Exp.T right = parseAddSubExp();
+            case TOKEN_SUB:
                 return new Ast.Exp.Sub(left, right, line);
-            }
-        }
-        return left;
-    }
-
-    // AndExp -> LtExp < LtExp
-    // -> LtExp
-    private Ast.Exp.T parseAndExp() {
-        Ast.Exp.T left = parseLtExp();
-        while (current.kind == Kind.TOKEN_LT) {
-            int line = current.lineNum;
-            advance();
-            Ast.Exp.T right = parseLtExp();
-            return new Ast.Exp.Lt(left, right, line);
-        }
-        return left;
-    }
-
-    // Exp -> AndExp && AndExp
-    // -> AndExp
-    private Ast.Exp.T parseExp() {
-        Ast.Exp.T andExp = parseAndExp();
-        while (current.kind == Kind.TOKEN_AND) {
-            int line = current.lineNum;
-            advance();
-            Ast.Exp.T andExpp = parseAndExp();
-            return new Ast.Exp.And(andExp, andExpp, line);
+            case TOKEN_TIMES:
+                return new Ast.Exp.Times(left, right, line);
+            default:
+                new util.Bug();
+                return null;
         }
-        return andExp;
     }
 
     // Statement -> { Statement* }
@@ -257,30 +369,33 @@ public class Parser {
         // to parse a statement.
 //        new util.Todo();
         int line = 0;
-        switch (current.kind) {
+        int start = -1;
+        switch (tokens.kind()) {
             case TOKEN_LBRACE:
                 advance();
-                LinkedList<Ast.Stm.T> stms = parseStatements();
+                Seq<Ast.Stm.T> stms = parseStatements();
                 eatToken(Kind.TOKEN_RBRACE);
                 return new Ast.Stm.Block(stms);
             case TOKEN_IF:
                 advance();
                 eatToken(Kind.TOKEN_LPAREN);
-                line = current.lineNum;
+                line = tokens.line();
+                start = tokens.start();
                 Ast.Exp.T condition = parseExp();
                 eatToken(Kind.TOKEN_RPAREN);
                 Ast.Stm.T thenn = parseStatement();
                 eatToken(Kind.TOKEN_ELSE);
                 Ast.Stm.T elsee = parseStatement();
-                return new Ast.Stm.If(condition, thenn, elsee, line);
+                return at(start, new Ast.Stm.If(condition, thenn, elsee, line));
             case TOKEN_WHILE:
                 advance();
                 eatToken(Kind.TOKEN_LPAREN);
-                line = current.lineNum;
+                line = tokens.line();
+                start = tokens.start();
                 Ast.Exp.T cc = parseExp();
                 eatToken(Kind.TOKEN_RPAREN);
                 Ast.Stm.T body = parseStatement();
-                return new Ast.Stm.While(cc, body, line);
+                return at(start, new Ast.Stm.While(cc, body, line));
             case TOKEN_SYSTEM:
                 advance();
                 eatToken(Kind.TOKEN_DOT);
@@ -288,26 +403,18 @@ public class Parser {
                 eatToken(Kind.TOKEN_DOT);
                 eatToken(Kind.TOKEN_PRINTLN);
                 eatToken(Kind.TOKEN_LPAREN);
-                line = current.lineNum;
+                line = tokens.line();
+                start = tokens.start();
                 Ast.Exp.T bb = parseExp();
                 eatToken(Kind.TOKEN_RPAREN);
                 eatToken(Kind.TOKEN_SEMI);
-                return new Ast.Stm.Print(bb, line);
+                return at(start, new Ast.Stm.Print(bb, line));
             case TOKEN_ID:
-                String id;
-                if (rollback) {
-                    // deal with backtracking
-                    rollback = false;
-                    current.kind = rollbackKind;
-                    id = rollbackLexeme;
-                    line = rollbackLineNum;
-                    //System.out.println("aaa " + id);
-                } else {
-                    id = current.lexeme;
-                    line = current.lineNum;
-                    advance();
-                }
-                if (current.kind == Kind.TOKEN_LBRACK) {
+                String id = tokens.lexeme();
+                line = tokens.line();
+                start = tokens.start();
+                advance();
+                if (tokens.kind() == Kind.TOKEN_LBRACK) {
                     // assign array
                     eatToken(Kind.TOKEN_LBRACK);
                     Ast.Exp.T exp = parseExp();
@@ -315,32 +422,41 @@ public class Parser {
                     eatToken(Kind.TOKEN_ASSIGN);
                     Ast.Exp.T expp = parseExp();
                     eatToken(Kind.TOKEN_SEMI);
-                    return new Ast.Stm.AssignArray(id, exp, expp, line);
+                    return at(start, new Ast.Stm.AssignArray(id, exp, expp, line));
                 } else {
                     // assign
                     eatToken(Kind.TOKEN_ASSIGN);
                     Ast.Exp.T exppp = parseExp();
                     eatToken(Kind.TOKEN_SEMI);
-                    return new Ast.Stm.Assign(id, exppp, line);
+                    return at(start, new Ast.Stm.Assign(id, exppp, line));
                 }
             default:
-                System.out.println("Func: parseStatement");
-                error();
-                return null;
+                throw error("expects a statement");
         }
     }
 
     // Statements -> Statement Statements
     // ->
-    private LinkedList<Ast.Stm.T> parseStatements() {
-        LinkedList<Ast.Stm.T> stms = new LinkedList<>();
-        //System.out.println("current kind: " + current.kind.toString());
-        while (current.kind == Kind.TOKEN_LBRACE || current.kind == Kind.TOKEN_IF
-                || current.kind == Kind.TOKEN_WHILE
-                || current.kind == Kind.TOKEN_SYSTEM || current.kind == Kind.TOKEN_ID) {
-            stms.add(parseStatement());
+    private Seq<Ast.Stm.T> parseStatements() {
+        int mark = sp;
+        //System.out.println("current kind: " + tokens.kind().toString());
+        while (tokens.kind() == Kind.TOKEN_LBRACE || tokens.kind() == Kind.TOKEN_IF
+                || tokens.kind() == Kind.TOKEN_WHILE
+                || tokens.kind() == Kind.TOKEN_SYSTEM || tokens.kind() == Kind.TOKEN_ID) {
+            int before = sp;
+            try {
+                push(parseStatement());
+            } catch (Panic p) {
+                unwind(before);
+                // resume after the ";" ending the broken statement; on
+                // anything else the enclosing construct takes over.
+                skipTo(Kind.TOKEN_SEMI, Kind.TOKEN_RBRACE, Kind.TOKEN_CLASS, Kind.TOKEN_PUBLIC);
+                if (tokens.kind() != Kind.TOKEN_SEMI)
+                    break;
+                advance();
+            }
         }
-        return stms;
+        return popSeq(mark);
     }
 
     // Type -> int []
@@ -351,28 +467,26 @@ public class Parser {
         // Lab1. Exercise 4: Fill in the missing code
         // to parse a type.
 //        new util.Todo();
-        switch (current.kind) {
+        switch (tokens.kind()) {
             case TOKEN_INT:
                 advance();
-                if (current.kind == Kind.TOKEN_LBRACK) {
+                if (tokens.kind() == Kind.TOKEN_LBRACK) {
                     eatToken(Kind.TOKEN_LBRACK);
                     eatToken(Kind.TOKEN_RBRACK);
-                    return new Ast.Type.IntArray();
+                    return Ast.Type.INT_ARRAY;
                 }
-                return new Ast.Type.Int();
+                return Ast.Type.INT;
             case TOKEN_BOOLEAN:
                 advance();
-                return new Ast.Type.Boolean();
+                return Ast.Type.BOOLEAN;
             case TOKEN_ID:
-                String id = current.lexeme;
-                int line = current.lineNum;
+                String id = tokens.lexeme();
+                int line = tokens.line();
+                int start = tokens.start();
                 advance();
-                return new Ast.Type.ClassType(id, line);
+                return at(start, new Ast.Type.ClassType(id, line));
             default:
-                System.out.println(current.toString());
-                System.out.println("aaa");
-                error();
-                return null;
+                throw error("expects a type");
         }
     }
 
@@ -380,65 +494,68 @@ public class Parser {
     private Ast.Dec.T parseVarDecl() {
         // to parse the "Type" nonterminal in this method, instead of writing
         // a fresh one.
-        rollbackLexeme = current.lexeme;
-        rollbackLineNum = current.lineNum;
         Ast.Type.T type = parseType();
-        if (current.kind == Kind.TOKEN_ID) {
-            String id = current.lexeme;
-            eatToken(Kind.TOKEN_ID);
-            eatToken(Kind.TOKEN_SEMI);
-            return new Ast.Dec.DecSingle(type, id);
-        } else {
-            // deal with the following situation
-            // int i;
-            // i = 0;
-            // prevent backtracking
-            rollback = true;
-            rollbackKind = current.kind;
-            current.kind = Kind.TOKEN_ID;
-            return null;
-        }
+        String id = tokens.lexeme();
+        int line = tokens.line();
+        int start = tokens.start();
+        eatToken(Kind.TOKEN_ID);
+        eatToken(Kind.TOKEN_SEMI);
+        return at(start, new Ast.Dec.DecSingle(type, id, line));
     }
 
     // VarDecls -> VarDecl VarDecls
     // ->
-    private LinkedList<Ast.Dec.T> parseVarDecls() {
-        LinkedList<Ast.Dec.T> decs = new LinkedList<>();
-        while (current.kind == Kind.TOKEN_INT || current.kind == Kind.TOKEN_BOOLEAN
-                || current.kind == Kind.TOKEN_ID) {
-            if (rollback) {
-                return decs;
-            }
-            Ast.Dec.T dec = parseVarDecl();
-            if (dec != null) {
-                decs.add(dec);
+    private Seq<Ast.Dec.T> parseVarDecls() {
+        int mark = sp;
+        // "id id" starts a declaration of some class type, but "id =" or
+        // "id [" starts the first statement, so one more token of
+        // lookahead tells them apart:
+        //   int i;
+        //   i = 0;
+        while (tokens.kind() == Kind.TOKEN_INT || tokens.kind() == Kind.TOKEN_BOOLEAN
+                || (tokens.kind() == Kind.TOKEN_ID && tokens.peek(1) == Kind.TOKEN_ID)) {
+            int before = sp;
+            try {
+                push(parseVarDecl());
+            } catch (Panic p) {
+                unwind(before);
+                skipTo(Kind.TOKEN_SEMI, Kind.TOKEN_RBRACE, Kind.TOKEN_CLASS, Kind.TOKEN_PUBLIC);
+                if (tokens.kind() != Kind.TOKEN_SEMI)
+                    break;
+                advance();
             }
         }
-        return decs;
+        return popSeq(mark);
     }
 
     // FormalList -> Type id FormalRest*
     // ->
     // FormalRest -> , Type id
-    private LinkedList<Ast.Dec.T> parseFormalList() {
-        LinkedList<Ast.Dec.T> formals = new LinkedList<>();
-        if (current.kind == Kind.TOKEN_INT || current.kind == Kind.TOKEN_BOOLEAN
-                || current.kind == Kind.TOKEN_ID) {
+    private Seq<Ast.Dec.T> parseFormalList() {
+        int mark = sp;
+        if (tokens.kind() == Kind.TOKEN_INT || tokens.kind() == Kind.TOKEN_BOOLEAN
+                || tokens.kind() == Kind.TOKEN_ID) {
             Ast.Type.T type;
             String id;
+            int line;
+            int start;
             type = parseType();
-            id = current.lexeme;
+            id = tokens.lexeme();
+            line = tokens.line();
+            start = tokens.start();
             eatToken(Kind.TOKEN_ID);
-            formals.add(new Ast.Dec.DecSingle(type, id));
-            while (current.kind == Kind.TOKEN_COMMER) {
+            push(at(start, new Ast.Dec.DecSingle(type, id, line)));
+            while (tokens.kind() == Kind.TOKEN_COMMER) {
                 advance();
                 type = parseType();
-                id = current.lexeme;
+                id = tokens.lexeme();
+                line = tokens.line();
+                start = tokens.start();
                 eatToken(Kind.TOKEN_ID);
-                formals.add(new Ast.Dec.DecSingle(type, id));
+                push(at(start, new Ast.Dec.DecSingle(type, id, line)));
             }
         }
-        return formals;
+        return popSeq(mark);
     }
 
     // Method -> public Type id ( FormalList )
@@ -449,64 +566,157 @@ public class Parser {
 //        new util.Todo();
         eatToken(Kind.TOKEN_PUBLIC);
         Ast.Type.T retType = parseType();
-        String id = current.lexeme;
+        String id = tokens.lexeme();
+        int line = tokens.line();
+        int start = tokens.start();
         eatToken(Kind.TOKEN_ID);
         eatToken(Kind.TOKEN_LPAREN);
-        LinkedList<Ast.Dec.T> formals = parseFormalList();
+        Seq<Ast.Dec.T> formals = parseFormalList();
         eatToken(Kind.TOKEN_RPAREN);
         eatToken(Kind.TOKEN_LBRACE);
 //        System.out.println("hhhh");
-        LinkedList<Ast.Dec.T> locals = parseVarDecls();
-        LinkedList<Ast.Stm.T> stms = parseStatements();
+        Seq<Ast.Dec.T> locals = parseVarDecls();
+        Seq<Ast.Stm.T> stms = parseStatements();
         //System.out.println("aaa");
         eatToken(Kind.TOKEN_RETURN);
-        int line = current.lineNum;
         Ast.Exp.T retExp = parseExp();
         eatToken(Kind.TOKEN_SEMI);
         eatToken(Kind.TOKEN_RBRACE);
-        return new Ast.Method.MethodSingle(retType, id, formals, locals, stms, retExp, line);
+        return at(start, new Ast.Method.MethodSingle(retType, id, formals, locals, stms, retExp, line));
     }
 
     // MethodDecls -> MethodDecl MethodDecls
     // ->
-    private LinkedList<Ast.Method.T> parseMethodDecls() {
-        LinkedList<Ast.Method.T> methods = new LinkedList<>();
-        while (current.kind == Kind.TOKEN_PUBLIC) {
-            Ast.Method.T method = parseMethod();
-            methods.add(method);
+    private Seq<Ast.Method.T> parseMethodDecls() {
+        int mark = sp;
+        while (tokens.kind() == Kind.TOKEN_PUBLIC) {
+            int before = sp;
+            try {
+                Ast.Method.T method = parseMethod();
+                push(method);
+            } catch (Panic p) {
+                unwind(before);
+                // drop the broken method, go on with the next one
+                skipTo(Kind.TOKEN_PUBLIC, Kind.TOKEN_CLASS);
+            }
         }
-        return methods;
+        return popSeq(mark);
     }
 
     // ClassDecl -> class id { VarDecl* MethodDecl* }
     // -> class id extends id { VarDecl* MethodDecl* }
     private Ast.Class.T parseClassDecl() {
         eatToken(Kind.TOKEN_CLASS);
-        String id = current.lexeme;
+        String id = tokens.lexeme();
+        int line = tokens.line();
+        int start = tokens.start();
         eatToken(Kind.TOKEN_ID);
         String extendss = null;
-        if (current.kind == Kind.TOKEN_EXTENDS) {
+        if (tokens.kind() == Kind.TOKEN_EXTENDS) {
             eatToken(Kind.TOKEN_EXTENDS);
-            extendss = current.lexeme;
+            extendss = tokens.lexeme();
             eatToken(Kind.TOKEN_ID);
         }
         eatToken(Kind.TOKEN_LBRACE);
-        LinkedList<Ast.Dec.T> decs = parseVarDecls();
-        LinkedList<Ast.Method.T> methods = parseMethodDecls();
+        Seq<Ast.Dec.T> decs = parseVarDecls();
+        Seq<Ast.Method.T> methods = parseMethodDecls();
         eatToken(Kind.TOKEN_RBRACE);
-        return new Ast.Class.ClassSingle(id, extendss, decs, methods);
+        return at(start, new Ast.Class.ClassSingle(id, extendss, decs, methods, line));
     }
 
     // ClassDecls -> ClassDecl ClassDecls
     // ->
-    private LinkedList<Ast.Class.T> parseClassDecls() {
-        LinkedList<Ast.Class.T> classes = new LinkedList<>();
-        while (current.kind == Kind.TOKEN_CLASS) {
-            classes.add(parseClassDecl());
+    private Seq<Ast.Class.T> parseClassDecls() {
+        int mark = sp;
+        while (tokens.kind() == Kind.TOKEN_CLASS) {
+            int before = sp;
+            try {
+                push(parseClassDecl());
+            } catch (Panic p) {
+                unwind(before);
+                skipTo(Kind.TOKEN_CLASS);
+            }
+        }
+        return popSeq(mark);
+    }
+
+    // ClassDecls, parsed in parallel on "jobs" workers. Classes can be
+    // told apart without parsing them: each one starts with a "class"
+    // outside of all braces. So the tokens are cut there into runs of
+    // whole classes, and each run is parsed from a slice of its own.
+    //
+    // Return null, having consumed nothing, when the braces do not
+    // balance or a run has syntax errors: the sequential parser then
+    // goes over the classes again, so that errors are found and
+    // reported just the same as without workers.
+    private Seq<Ast.Class.T> parseClassDeclsParallel(int jobs) {
+        int first = tokens.position();
+        int eof = tokens.size() - 1;
+        ArrayList<Integer> classStarts = new ArrayList<>();
+        int depth = 0;
+        for (int i = first; i < eof; i++) {
+            switch (tokens.kind(i)) {
+                case TOKEN_LBRACE:
+                    depth++;
+                    break;
+                case TOKEN_RBRACE:
+                    if (--depth < 0)
+                        return null;
+                    break;
+                case TOKEN_CLASS:
+                    if (depth == 0)
+                        classStarts.add(i);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (depth != 0 || classStarts.size() < 2 || classStarts.get(0) != first)
+            return null;
+
+        // a few runs per worker, so that one large class does not
+        // leave the others idle.
+        int runs = Math.min(classStarts.size(), jobs * 4);
+        List<Callable<Parser>> tasks = new ArrayList<>();
+        for (int r = 0; r < runs; r++) {
+            int from = classStarts.get(classStarts.size() * r / runs);
+            int to = (r == runs - 1) ? eof : classStarts.get(classStarts.size() * (r + 1) / runs);
+            tasks.add(() -> {
+                Parser p = new Parser(tokens.slice(from, to));
+                p.classes = p.parseClassDecls();
+                p.eatToken(Kind.TOKEN_EOF);
+                return p;
+            });
+        }
+
+        List<Seq<Ast.Class.T>> parsed = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        try {
+            List<Future<Parser>> results = pool.invokeAll(tasks);
+            for (int r = 0; r < runs; r++) {
+                Parser p = results.get(r).get();
+                if (!p.diag.isEmpty())
+                    return null;
+                parsed.add(p.classes);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            // a worker hit a syntax error it could not recover from
+            return null;
+        } finally {
+            pool.shutdown();
         }
-        return classes;
+
+        int mark = sp;
+        for (Seq<Ast.Class.T> run : parsed)
+            for (Ast.Class.T c : run)
+                push(c);
+        tokens.seek(eof);
+        return popSeq(mark);
     }
 
+    // the classes parsed by a worker in "parseClassDeclsParallel"
+    private Seq<Ast.Class.T> classes;
+
     // MainClass -> class id
     // {
     // public static void main ( String [] id )
@@ -520,7 +730,7 @@ public class Parser {
         // grammar above.
 //        new util.Todo();
         eatToken(Kind.TOKEN_CLASS);
-        String id = current.lexeme;
+        String id = tokens.lexeme();
         eatToken(Kind.TOKEN_ID);
         eatToken(Kind.TOKEN_LBRACE);
         eatToken(Kind.TOKEN_PUBLIC);
@@ -531,7 +741,7 @@ public class Parser {
         eatToken(Kind.TOKEN_STRING);
         eatToken(Kind.TOKEN_LBRACK);
         eatToken(Kind.TOKEN_RBRACK);
-        String args = current.lexeme;
+        String args = tokens.lexeme();
         eatToken(Kind.TOKEN_ID);
         eatToken(Kind.TOKEN_RPAREN);
         eatToken(Kind.TOKEN_LBRACE);
@@ -544,15 +754,39 @@ public class Parser {
 
     // Program -> MainClass ClassDecl*
     private Ast.Program.T parseProgram() {
-        Ast.MainClass.T main = parseMainClass();
-        LinkedList<Ast.Class.T> classes = parseClassDecls();
-        eatToken(Kind.TOKEN_EOF);
+        Ast.MainClass.T main = null;
+        int before = sp;
+        try {
+            main = parseMainClass();
+        } catch (Panic p) {
+            unwind(before);
+            skipTo(Kind.TOKEN_CLASS);
+        }
+        Seq<Ast.Class.T> classes = null;
+        if (ConParser.jobs > 1 && diag.isEmpty())
+            classes = parseClassDeclsParallel(ConParser.jobs);
+        if (classes == null)
+            classes = parseClassDecls();
+        try {
+            eatToken(Kind.TOKEN_EOF);
+        } catch (Panic p) {
+            // trailing garbage, nothing left to resynchronize with
+        }
         return new Ast.Program.ProgramSingle(main, classes);
     }
 
 
+    // parse the whole file; if there are lexical or syntax errors,
+    // report all of them and abort.
     public ast.Ast.Program.T parse() {
-        return parseProgram();
-        //return null;
+        Ast.Program.T prog = parseProgram();
+        if (!diag.isEmpty()) {
+            int lexical = diag.count(Diagnostics.Phase.LEXER);
+            int syntax = diag.count(Diagnostics.Phase.PARSER);
+            if (lexical == 0)
+                diag.abort(syntax + " syntax error(s): compilation aborting...");
+            diag.abort(lexical + " lexical and " + syntax + " syntax error(s): compilation aborting...");
+        }
+        return prog;
     }
 }
@@ -0,0 +1,221 @@
+package util;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import control.Control.ConDiag;
+
+// The errors found in one file by the lexer, the parser and the
+// elaborator. Each phase records its errors here and goes on, and
+// the driver prints them all at once (see "abort"), as text or as
+// JSON (see "ConDiag").
+//
+// A message is kept as a format and its arguments, and only formatted
+// when it is printed. With "ConDiag.maxErrors" set, only that many
+// errors are kept, the first ones by line, and the others are only
+// counted. So nothing is formatted while nothing is wrong, and little
+// when a lot is.
+public class Diagnostics
+{
+  public enum Phase
+  {
+    LEXER, PARSER, ELABORATOR
+  }
+
+  public static final class Diagnostic
+  {
+    public final Phase phase;
+    public final int line;
+    final int offset; // into the source, -1 if unknown
+    final String format;
+    final Object[] args;
+    final int seq; // the order errors on one line were found in
+
+    Diagnostic(Phase phase, int line, int offset, String format, Object[] args, int seq)
+    {
+      this.phase = phase;
+      this.line = line;
+      this.offset = offset;
+      this.format = format;
+      this.args = args;
+      this.seq = seq;
+    }
+
+    public String message()
+    {
+      return this.args.length == 0 ? this.format : String.format(this.format, this.args);
+    }
+
+    // the text of each phase, as it always was
+    @Override
+    public String toString()
+    {
+      switch (this.phase) {
+      case LEXER:
+        return "Lexical error: " + this.message() + " at line " + this.line;
+      case PARSER:
+        return "Syntax error at line " + this.line + ": " + this.message();
+      default:
+        return "Error: " + this.message() + " at line " + this.line;
+      }
+    }
+  }
+
+  private static final Comparator<Diagnostic> byLine = (a, b) -> a.line != b.line
+      ? Integer.compare(a.line, b.line) : Integer.compare(a.seq, b.seq);
+
+  private final String file;
+  private final char[] source; // for columns, null if not at hand
+  // the kept errors, the last one by line on top
+  private final PriorityQueue<Diagnostic> kept;
+  private final int[] count; // per phase, kept or not
+  private int seq;
+
+  public Diagnostics(String file, char[] source)
+  {
+    this.file = file;
+    this.source = source;
+    this.kept = new PriorityQueue<Diagnostic>(byLine.reversed());
+    this.count = new int[Phase.values().length];
+    this.seq = 0;
+  }
+
+  // an error at "line", and at "offset" into the source if that
+  // is known (-1 if not)
+  public void error(Phase phase, int line, int offset, String format, Object... args)
+  {
+    this.count[phase.ordinal()]++;
+    this.keep(phase, line, offset, format, args);
+  }
+
+  private void keep(Phase phase, int line, int offset, String format, Object[] args)
+  {
+    int max = ConDiag.maxErrors;
+    if (max > 0 && this.kept.size() >= max && this.kept.peek().line <= line)
+      return;
+    this.kept.add(new Diagnostic(phase, line, offset, format, args, this.seq++));
+    if (max > 0 && this.kept.size() > max)
+      this.kept.poll();
+  }
+
+  // the errors of "d", e.g. those of a worker, after these
+  public void addAll(Diagnostics d)
+  {
+    List<Diagnostic> es = d.sorted();
+    for (Diagnostic e : es)
+      this.keep(e.phase, e.line, e.offset, e.format, e.args);
+    for (int i = 0; i < this.count.length; i++)
+      this.count[i] += d.count[i];
+  }
+
+  public boolean isEmpty()
+  {
+    return this.count() == 0;
+  }
+
+  public int count()
+  {
+    int n = 0;
+    for (int c : this.count)
+      n += c;
+    return n;
+  }
+
+  public int count(Phase phase)
+  {
+    return this.count[phase.ordinal()];
+  }
+
+  public String file()
+  {
+    return this.file;
+  }
+
+  // the kept errors, by line; those on one line in the order
+  // they were found.
+  public List<Diagnostic> sorted()
+  {
+    ArrayList<Diagnostic> all = new ArrayList<Diagnostic>(this.kept);
+    all.sort(byLine);
+    return all;
+  }
+
+  // counted from 1, 0 if unknown
+  public int column(Diagnostic d)
+  {
+    if (d.offset < 0 || this.source == null)
+      return 0;
+    int i = d.offset;
+    while (i > 0 && this.source[i - 1] != '\n')
+      i--;
+    return d.offset - i + 1;
+  }
+
+  // print the errors, then "summary" as the last line of the text
+  // format, and exit.
+  public void abort(String summary)
+  {
+    this.print(System.out, summary);
+    System.exit(1);
+  }
+
+  public void print(PrintStream out, String summary)
+  {
+    List<Diagnostic> all = this.sorted();
+    if (ConDiag.format == ConDiag.Format.JSON) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("{\"file\": ").append(json(this.file));
+      sb.append(", \"count\": ").append(this.count());
+      sb.append(", \"errors\": [");
+      for (int i = 0; i < all.size(); i++) {
+        Diagnostic d = all.get(i);
+        sb.append(i == 0 ? "\n  " : ",\n  ");
+        sb.append("{\"phase\": ").append(json(d.phase.name().toLowerCase()));
+        sb.append(", \"line\": ").append(d.line);
+        sb.append(", \"column\": ").append(this.column(d));
+        sb.append(", \"message\": ").append(json(d.message())).append('}');
+      }
+      sb.append(all.isEmpty() ? "]}" : "\n]}");
+      out.println(sb);
+      return;
+    }
+    for (Diagnostic d : all)
+      out.println(d);
+    if (all.size() < this.count())
+      out.println("(" + (this.count() - all.size()) + " more not shown, see -maxerrors)");
+    out.println(summary);
+  }
+
+  private static String json(String s)
+  {
+    if (s == null)
+      return "null";
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+      case '"':
+        sb.append("\\\"");
+        break;
+      case '\\':
+        sb.append("\\\\");
+        break;
+      case '\n':
+        sb.append("\\n");
+        break;
+      case '\t':
+        sb.append("\\t");
+        break;
+      default:
+        if (c < 0x20)
+          sb.append(String.format("\\u%04x", (int) c));
+        else
+          sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+}
@@ -0,0 +1,130 @@
+package util;
+
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+// The text output of the pretty printers. Text is gathered into a
+// buffer and written out to the file in blocks of "BLOCK" characters,
+// so each character is copied once into the buffer and encoded once
+// into the file, and nothing is written or caught per fragment.
+// Indentation comes from one cached string of spaces.
+//
+// An emitter without a file keeps all its text, for a part of the
+// output made apart from the rest (see "say(Emitter)").
+//
+// An I/O error ends the compiler, as it always did in the printers.
+public class Emitter
+{
+  private static final int BLOCK = 1 << 16;
+  private static final String SPACES = "                                                                ";
+
+  private FileChannel out; // null if in memory
+  private final StringBuilder buf;
+  private final CharsetEncoder encoder;
+  private final ByteBuffer bytes;
+
+  public Emitter()
+  {
+    this.out = null;
+    this.buf = new StringBuilder();
+    this.encoder = null;
+    this.bytes = null;
+  }
+
+  public Emitter(String fileName)
+  {
+    try {
+      this.out = new FileOutputStream(fileName).getChannel();
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+    this.buf = new StringBuilder(BLOCK + BLOCK / 4);
+    // like the writers this replaces
+    this.encoder = Charset.defaultCharset().newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.bytes = ByteBuffer.allocate((int) (BLOCK * 2 * this.encoder.maxBytesPerChar()));
+  }
+
+  public void say(String s)
+  {
+    this.buf.append(s);
+    if (this.buf.length() >= BLOCK && this.out != null)
+      this.flush(false);
+  }
+
+  public void say(int n)
+  {
+    this.buf.append(n);
+  }
+
+  public void say(char c)
+  {
+    this.buf.append(c);
+  }
+
+  public void sayln(String s)
+  {
+    this.buf.append(s).append('\n');
+    if (this.buf.length() >= BLOCK && this.out != null)
+      this.flush(false);
+  }
+
+  // the text of "part", an emitter in memory
+  public void say(Emitter part)
+  {
+    this.buf.append(part.buf);
+    if (this.buf.length() >= BLOCK && this.out != null)
+      this.flush(false);
+  }
+
+  // "n" spaces
+  public void spaces(int n)
+  {
+    for (; n > SPACES.length(); n -= SPACES.length())
+      this.buf.append(SPACES);
+    this.buf.append(SPACES, 0, n);
+  }
+
+  public void close()
+  {
+    this.flush(true);
+    try {
+      this.out.close();
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private void flush(boolean last)
+  {
+    CharBuffer chars = CharBuffer.wrap(this.buf);
+    try {
+      for (;;) {
+        boolean full = this.encoder.encode(chars, this.bytes, last).isOverflow();
+        if (!full && last)
+          this.encoder.flush(this.bytes);
+        this.bytes.flip();
+        while (this.bytes.hasRemaining())
+          this.out.write(this.bytes);
+        this.bytes.clear();
+        if (!full)
+          break;
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+    if (last)
+      this.encoder.reset();
+    // an unfinished surrogate pair waits for the rest of it
+    this.buf.delete(0, chars.position());
+  }
+}
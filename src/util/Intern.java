@@ -0,0 +1,123 @@
+package util;
+
+// A compiler-wide table of interned strings (identifiers and other
+// lexemes), so that each distinct spelling is allocated exactly once
+// and can afterwards be compared by identity.
+//
+// The global table is shared and synchronized. Each lexer works on its
+// own unsynchronized front table (see "local()"), which falls back to
+// the global one only on a miss, so repeated identifiers cost neither
+// an allocation nor a lock.
+public class Intern
+{
+  private static final Intern global = new Intern(null);
+
+  private final Intern parent; // consulted on a miss, null for "global"
+  private String[] keys; // open addressing, linear probing
+  private int[] hashes; // the hash code of each key
+  private int size;
+
+  private Intern(Intern parent)
+  {
+    this.parent = parent;
+    this.keys = new String[256];
+    this.hashes = new int[256];
+    this.size = 0;
+  }
+
+  // a fresh front table for a single lexer
+  public static Intern local()
+  {
+    return new Intern(global);
+  }
+
+  // intern the given string into the global table
+  public static String intern(String s)
+  {
+    synchronized (global) {
+      int h = s.hashCode();
+      int mask = global.keys.length - 1;
+      for (int i = mix(h) & mask;; i = (i + 1) & mask) {
+        String k = global.keys[i];
+        if (k == null)
+          break;
+        if (global.hashes[i] == h && k.equals(s))
+          return k;
+      }
+      global.insert(s, h);
+      return s;
+    }
+  }
+
+  // intern the chars buf[start, start+len), without allocating if
+  // the spelling has been seen before.
+  public String intern(char[] buf, int start, int len)
+  {
+    // the same hash as "String.hashCode()"
+    int h = 0;
+    for (int i = start; i < start + len; i++)
+      h = 31 * h + buf[i];
+    return this.intern(buf, start, len, h);
+  }
+
+  private String intern(char[] buf, int start, int len, int h)
+  {
+    int mask = this.keys.length - 1;
+    for (int i = mix(h) & mask;; i = (i + 1) & mask) {
+      String k = this.keys[i];
+      if (k == null)
+        break;
+      if (this.hashes[i] == h && matches(k, buf, start, len))
+        return k;
+    }
+    String s;
+    if (this.parent == null)
+      s = new String(buf, start, len);
+    else
+      synchronized (this.parent) {
+        s = this.parent.intern(buf, start, len, h);
+      }
+    this.insert(s, h);
+    return s;
+  }
+
+  private void insert(String s, int h)
+  {
+    if ((this.size + 1) * 2 > this.keys.length)
+      this.grow();
+    int mask = this.keys.length - 1;
+    int i = mix(h) & mask;
+    while (this.keys[i] != null)
+      i = (i + 1) & mask;
+    this.keys[i] = s;
+    this.hashes[i] = h;
+    this.size++;
+  }
+
+  private void grow()
+  {
+    String[] oldKeys = this.keys;
+    int[] oldHashes = this.hashes;
+    this.keys = new String[oldKeys.length * 2];
+    this.hashes = new int[oldKeys.length * 2];
+    this.size = 0;
+    for (int i = 0; i < oldKeys.length; i++)
+      if (oldKeys[i] != null)
+        this.insert(oldKeys[i], oldHashes[i]);
+  }
+
+  private static int mix(int h)
+  {
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean matches(String k, char[] buf, int start, int len)
+  {
+    if (k.length() != len)
+      return false;
+    for (int i = 0; i < len; i++)
+      if (k.charAt(i) != buf[start + i])
+        return false;
+    return true;
+  }
+}
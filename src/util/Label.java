@@ -3,16 +3,43 @@ package util;
 public class Label
 {
   private int i;
+  private Block block; // null if numbered as it is made
   private static int count = 0;
 
   public Label()
   {
     i = count++;
+    block = null;
+  }
+
+  // a label of "b"
+  public Label(Block b)
+  {
+    i = b.size++;
+    block = b;
+  }
+
+  // The labels of a part of the program that is translated apart
+  // from the rest, maybe at the same time as other parts. They are
+  // numbered within the block at first, and "place" moves them after
+  // all the labels made so far: placing the blocks in program order
+  // numbers the labels as making them in that order would have.
+  public static class Block
+  {
+    private int size = 0;
+    private int base = 0;
+
+    public void place()
+    {
+      this.base = count;
+      count += this.size;
+    }
   }
 
   @Override
   public String toString()
   {
-    return "L_" + (Integer.toString(this.i));
+    int n = this.block == null ? this.i : this.block.base + this.i;
+    return "L_" + (Integer.toString(n));
   }
 }
@@ -0,0 +1,78 @@
+package util;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+// An immutable list over an exactly-sized array: one object plus one
+// array per list, no per-element nodes. The lists in the abstract
+// syntax trees are built once by the parser and afterwards only
+// walked or indexed, so this is all they need.
+public final class Seq<X> extends AbstractList<X> implements RandomAccess
+{
+  private static final Seq<Object> EMPTY = new Seq<Object>(new Object[0]);
+
+  private final Object[] elems;
+
+  private Seq(Object[] elems)
+  {
+    this.elems = elems;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <X> Seq<X> empty()
+  {
+    return (Seq<X>) EMPTY;
+  }
+
+  @SafeVarargs
+  public static <X> Seq<X> of(X... xs)
+  {
+    if (xs.length == 0)
+      return empty();
+    Object[] elems = new Object[xs.length];
+    for (int i = 0; i < xs.length; i++)
+      elems[i] = xs[i];
+    return new Seq<X>(elems);
+  }
+
+  public static <X> Seq<X> of(Collection<? extends X> xs)
+  {
+    if (xs instanceof Seq)
+    {
+      @SuppressWarnings("unchecked")
+      Seq<X> s = (Seq<X>) xs;
+      return s;
+    }
+    if (xs.isEmpty())
+      return empty();
+    return new Seq<X>(xs.toArray());
+  }
+
+  // the elements a[from, to), copied out
+  public static <X> Seq<X> copyOf(Object[] a, int from, int to)
+  {
+    if (from == to)
+      return empty();
+    return new Seq<X>(java.util.Arrays.copyOfRange(a, from, to));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public X get(int i)
+  {
+    return (X) this.elems[i];
+  }
+
+  @Override
+  public int size()
+  {
+    return this.elems.length;
+  }
+
+  @Override
+  public Object[] toArray()
+  {
+    return this.elems.clone();
+  }
+}
@@ -0,0 +1,147 @@
+package util;
+
+import java.util.Arrays;
+
+// A "SymbolTable" on open addressing, for one thread. The entries are
+// kept dense, in the order they were put, and "index" maps a hash
+// slot to an entry (plus 1, 0 for an empty slot). Probing compares
+// names by identity first, which is all it takes for interned names;
+// "equals" is the fallback for names built some other way.
+//
+// Nothing is ever removed, as in every symbol table of the compiler.
+public final class SymbolMap<V> implements SymbolTable<V>
+{
+  private String[] names;
+  private Object[] values;
+  private int size;
+  private int[] index; // length a power of 2, at most half full
+
+  public SymbolMap()
+  {
+    this.names = new String[4];
+    this.values = new Object[4];
+    this.size = 0;
+    this.index = new int[8];
+  }
+
+  // a copy of "m", to put more into
+  public SymbolMap(SymbolMap<V> m)
+  {
+    this.names = m.names.clone();
+    this.values = m.values.clone();
+    this.size = m.size;
+    this.index = m.index.clone();
+  }
+
+  // the slot of "name" in "index", or the empty slot it would go into
+  private int slot(String name)
+  {
+    int mask = this.index.length - 1;
+    int h = name.hashCode();
+    for (int i = (h ^ (h >>> 16)) & mask;; i = (i + 1) & mask) {
+      int e = this.index[i];
+      if (e == 0)
+        return i;
+      String k = this.names[e - 1];
+      if (k == name || k.equals(name))
+        return i;
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(String name)
+  {
+    int e = this.index[this.slot(name)];
+    return e == 0 ? null : (V) this.values[e - 1];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V put(String name, V value)
+  {
+    int i = this.slot(name);
+    int e = this.index[i];
+    if (e != 0) {
+      V old = (V) this.values[e - 1];
+      this.values[e - 1] = value;
+      return old;
+    }
+    this.add(i, name, value);
+    return null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V putIfAbsent(String name, V value)
+  {
+    int i = this.slot(name);
+    int e = this.index[i];
+    if (e != 0)
+      return (V) this.values[e - 1];
+    this.add(i, name, value);
+    return null;
+  }
+
+  // put everything in "m" into this table
+  public void putAll(SymbolMap<V> m)
+  {
+    for (int e = 0; e < m.size; e++) {
+      @SuppressWarnings("unchecked")
+      V v = (V) m.values[e];
+      this.put(m.names[e], v);
+    }
+  }
+
+  private void add(int slot, String name, Object value)
+  {
+    if (this.size == this.names.length) {
+      this.names = Arrays.copyOf(this.names, this.size * 2);
+      this.values = Arrays.copyOf(this.values, this.size * 2);
+    }
+    this.names[this.size] = name;
+    this.values[this.size] = value;
+    this.size++;
+    this.index[slot] = this.size;
+    if (this.size * 2 > this.index.length)
+      this.rehash();
+  }
+
+  private void rehash()
+  {
+    this.index = new int[this.index.length * 2];
+    int mask = this.index.length - 1;
+    for (int e = 0; e < this.size; e++) {
+      int h = this.names[e].hashCode();
+      int i = (h ^ (h >>> 16)) & mask;
+      while (this.index[i] != 0)
+        i = (i + 1) & mask;
+      this.index[i] = e + 1;
+    }
+  }
+
+  @Override
+  public int size()
+  {
+    return this.size;
+  }
+
+  // in the order they were put
+  @Override
+  public Iterable<String> names()
+  {
+    return Seq.copyOf(this.names, 0, this.size);
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder("{");
+    for (int e = 0; e < this.size; e++) {
+      if (e > 0)
+        sb.append(", ");
+      sb.append(this.names[e]).append('=').append(this.values[e]);
+    }
+    return sb.append('}').toString();
+  }
+}
@@ -0,0 +1,27 @@
+package util;
+
+// A table from names to what the compiler knows about them: fields,
+// methods, variables or classes. The names are identifiers from the
+// lexer, so they are interned (see "Intern") and mostly compared by
+// identity.
+//
+// "SymbolMap" is the table for a single thread. The parallel passes
+// build their tables before the threads start, and then only read
+// them.
+public interface SymbolTable<V>
+{
+  // null for a name not in the table
+  V get(String name);
+
+  // return the previous value, or null
+  V put(String name, V value);
+
+  // put only if "name" is not there yet; return the value
+  // that was there, or null
+  V putIfAbsent(String name, V value);
+
+  int size();
+
+  // the names in the table
+  Iterable<String> names();
+}
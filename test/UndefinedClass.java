@@ -0,0 +1,21 @@
+class UndefinedClass
+{
+	public static void main (String[] a)
+	{
+		System.out.println (new Foo().go(1));
+	}
+}
+
+// Calls on a class that is never declared: each one is an error,
+// and the errors after them are still found.
+class A
+{
+	public int f()
+	{
+		Foo y;
+		int n;
+		n = y.m();
+		n = true;
+		return n;
+	}
+}